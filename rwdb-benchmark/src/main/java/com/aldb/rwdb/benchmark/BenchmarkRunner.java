@@ -0,0 +1,28 @@
+package com.aldb.rwdb.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * benchmarks.jar的入口，参数与JMH命令行相同，默认带上GC profiler，每次操作的分配字节数见gc.alloc.rate.norm
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar                  全部基准
+ * java -jar target/benchmarks.jar RouteBenchmark   只跑路由
+ * </pre>
+ *
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+}
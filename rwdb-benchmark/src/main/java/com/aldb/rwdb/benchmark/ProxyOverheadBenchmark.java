@@ -0,0 +1,130 @@
+package com.aldb.rwdb.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aldb.rwdb.front.keypool.ConnectionPool;
+import com.aldb.rwdb.front.sql.RWDataSource;
+
+/**
+ * 端到端的代理开销:通过RWDataSource执行getConnection→prepareStatement→execute→close，
+ * 与直接使用同样连接池的H2连接对比。主库和从库是两个H2内存库，表结构和数据相同
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProxyOverheadBenchmark {
+
+    private static final String MASTER_URL = "jdbc:h2:mem:master;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    private static final String SLAVE_URL = "jdbc:h2:mem:slave;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    private static final String SELECT_SQL = "select id, user_id, amount from t_order where id = ?";
+    private static final String UPDATE_SQL = "update t_order set amount = amount + 1 where id = ?";
+
+    private RWDataSource rwDataSource;
+    private ConnectionPool rawPool;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        createSchema(MASTER_URL);
+        createSchema(SLAVE_URL);
+        rwDataSource = new RWDataSource("MySQL", MASTER_URL, Arrays.asList(SLAVE_URL), "sa", "");
+        rwDataSource.setHeartBeatPeriod(0);
+        rwDataSource.init();
+        rawPool = new ConnectionPool("raw", SLAVE_URL, "sa", "");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        rwDataSource.close();
+        rawPool.close();
+    }
+
+    private static void createSchema(String url) throws SQLException {
+        ConnectionPool pool = new ConnectionPool("schema", url, "sa", "");
+        Connection conn = pool.getConnection();
+        try {
+            Statement st = conn.createStatement();
+            st.execute("create table if not exists t_order (id int primary key, user_id int, amount decimal(10,2))");
+            for (int i = 1; i <= 100; i++) {
+                st.execute("merge into t_order key (id) values (" + i + ", " + i % 10 + ", 10.00)");
+            }
+            st.close();
+        } finally {
+            conn.close();
+            pool.close();
+        }
+    }
+
+    @Benchmark
+    public int rwdbSelect() throws SQLException {
+        return select(rwDataSource);
+    }
+
+    @Benchmark
+    public int rawSelect() throws SQLException {
+        return select(rawPool);
+    }
+
+    @Benchmark
+    public int rwdbUpdate() throws SQLException {
+        return update(rwDataSource);
+    }
+
+    @Benchmark
+    public int rawUpdate() throws SQLException {
+        return update(rawPool);
+    }
+
+    private static int select(DataSource ds) throws SQLException {
+        Connection conn = ds.getConnection();
+        try {
+            PreparedStatement ps = conn.prepareStatement(SELECT_SQL);
+            ps.setInt(1, 42);
+            ResultSet rs = ps.executeQuery();
+            int id = rs.next() ? rs.getInt(1) : 0;
+            rs.close();
+            ps.close();
+            return id;
+        } finally {
+            conn.close();
+        }
+    }
+
+    private static int update(DataSource ds) throws SQLException {
+        Connection conn = ds.getConnection();
+        try {
+            PreparedStatement ps = conn.prepareStatement(UPDATE_SQL);
+            ps.setInt(1, 42);
+            int count = ps.executeUpdate();
+            ps.close();
+            return count;
+        } finally {
+            conn.close();
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.aldb.rwdb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aldb.rwdb.BaseService;
+import com.aldb.rwdb.front.route.RouteCondition;
+import com.aldb.rwdb.front.route.RouteResult;
+import com.aldb.rwdb.front.route.RouteService;
+
+/**
+ * RouteService.route()在一组接近实际业务的sql上的耗时，分别测试是否实时模式、是否开启路由缓存
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouteBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean realTime;
+
+    @Param({ "0", "10000" })
+    public int routeCacheSize;
+
+    private RouteService routeService;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BaseService.setDbType("MySQL");
+        BaseService.setRouteCacheSize(routeCacheSize);
+        for (String table : SqlCorpus.WRITE_TABLES) {
+            BaseService.addWritedbTables(table);
+        }
+        BaseService.setRealTime(realTime);
+        routeService = BaseService.getRouteService();
+    }
+
+    @Benchmark
+    public RouteResult route() throws Exception {
+        String sql = SqlCorpus.SQLS[next++ % SqlCorpus.SQLS.length];
+        return routeService.route(new RouteCondition(sql, "MySQL"));
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.aldb.rwdb.benchmark;
+
+/**
+ * 基准测试使用的sql，覆盖单表读、多表关联、子查询、union、加锁读、注释开头以及各种写语句，
+ * 常量各不相同以体现路由缓存按模板归一化的效果
+ *
+ */
+final class SqlCorpus {
+
+    static final String[] WRITE_TABLES = { "t_order", "t_order_item" };
+
+    static final String[] SQLS = {
+            "select id, user_id, amount, status from t_order where id = 10001",
+            "select id, user_id, amount, status from t_order where id = 10002",
+            "SELECT o.id, o.amount, u.name FROM t_order o JOIN t_user u ON o.user_id = u.id WHERE u.id = 42 ORDER BY o.id DESC LIMIT 20",
+            "select count(*) from t_order_item where order_id in (select id from t_order where user_id = 7)",
+            "select * from t_user where name like 'abc%' and create_time > '2016-01-01 00:00:00'",
+            "select id from t_order where status = 1 union all select id from t_order_item where status = 2",
+            "select id, amount from t_order where id = 3 for update",
+            "/* trace=abc */ select name from t_user where id = 11",
+            "insert into t_order (user_id, amount, status) values (5, 12.5, 0)",
+            "update t_order set status = 2, update_time = now() where id = 10003 and status = 1",
+            "delete from t_order_item where order_id = 10004",
+            "replace into t_user (id, name) values (9, 'bob')",
+            "select o.id from t_order o where o.user_id = 15 and exists (select 1 from t_order_item i where i.order_id = o.id)",
+            "select id, user_id from t_order where id between 100 and 200 lock in share mode" };
+
+    private SqlCorpus() {
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.aldb.rwdb.front.sql;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RWPreparedStatement记录参数的开销，以及RWParameters把记录的参数回放到真正的PreparedStatement的开销，
+ * 与直接在H2的PreparedStatement上设置参数对比。放在com.aldb.rwdb.front.sql包下以便直接使用RWParameters
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParameterBindingBenchmark {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("12.50");
+
+    @Param({ "1", "10", "50", "200" })
+    public int parameterCount;
+
+    private RWPreparedStatement rwStatement;
+    private RWParameters parameters;
+    private Connection h2Connection;
+    private PreparedStatement h2Statement;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        StringBuilder sql = new StringBuilder("select ?");
+        for (int i = 1; i < parameterCount; i++) {
+            sql.append(", ?");
+        }
+        rwStatement = new RWPreparedStatement(sql.toString(), new RWConnection());
+        parameters = new RWParameters();
+        for (int i = 1; i <= parameterCount; i++) {
+            switch (i % 4) {
+            case 0:
+                parameters.setPrimitive(i, RWParameters.INT, i);
+                break;
+            case 1:
+                parameters.setPrimitive(i, RWParameters.LONG, i * 1000L);
+                break;
+            case 2:
+                parameters.set(i, RWParameters.STRING, "value");
+                break;
+            default:
+                parameters.set(i, RWParameters.BIG_DECIMAL, AMOUNT);
+                break;
+            }
+        }
+        h2Connection = DriverManager.getConnection("jdbc:h2:mem:binding", "sa", "");
+        h2Statement = h2Connection.prepareStatement(sql.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        h2Statement.close();
+        h2Connection.close();
+    }
+
+    /**
+     * 在RWPreparedStatement上设置参数，还没有真正的PreparedStatement时只是记录下来
+     */
+    @Benchmark
+    public RWPreparedStatement bind() throws SQLException {
+        rwStatement.clearParameters();
+        bindAll(rwStatement);
+        return rwStatement;
+    }
+
+    /**
+     * 把记录的参数回放到H2的PreparedStatement
+     */
+    @Benchmark
+    public PreparedStatement replay() throws SQLException {
+        parameters.fillPreparedStatement(h2Statement);
+        return h2Statement;
+    }
+
+    /**
+     * 直接在H2的PreparedStatement上设置同样的参数，作为基准
+     */
+    @Benchmark
+    public PreparedStatement direct() throws SQLException {
+        bindAll(h2Statement);
+        return h2Statement;
+    }
+
+    private void bindAll(PreparedStatement ps) throws SQLException {
+        for (int i = 1; i <= parameterCount; i++) {
+            switch (i % 4) {
+            case 0:
+                ps.setInt(i, i);
+                break;
+            case 1:
+                ps.setLong(i, i * 1000L);
+                break;
+            case 2:
+                ps.setString(i, "value");
+                break;
+            default:
+                ps.setBigDecimal(i, AMOUNT);
+                break;
+            }
+        }
+    }
+
+}
@@ -1,18 +1,21 @@
 package com.aldb.rwdb;
 
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.aldb.rwdb.front.cache.CacheService;
+import com.aldb.rwdb.front.cache.ResultCache;
+import com.aldb.rwdb.front.cache.RowCache;
+import com.aldb.rwdb.front.route.TableRouteRules;
 import com.aldb.rwdb.front.route.RouteService;
+import com.aldb.rwdb.util.AhoCorasickMatcher;
+import com.aldb.rwdb.util.Constant;
 
 public class BaseService {
 
-    // private static CacheService cacheService = new CacheService();
-    // private static RouteService routeService = new
-    // RouteService(cacheService);
-
-    private static RouteService routeService = new RouteService(null);// 去掉缓存
+    private static volatile RouteService routeService = new RouteService(new CacheService());
 
     /*
      * private static BaseService instance = new BaseService(); 
@@ -21,27 +24,46 @@ public class BaseService {
 
     private BaseService() {
     }
-    private static Set<String> allWritedbTables=new HashSet<String>();
+    private static Set<String> allWritedbTables=Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     public static void addWritedbTables(String tableName){
         allWritedbTables.add(tableName);
+        routeService.clearCache();
     }
     public static Set<String> getAllWritedbTables(){
         return allWritedbTables;
     }
     private static List<String> specialWriteSql;
+    private static volatile AhoCorasickMatcher specialWriteSqlMatcher;
 
     public static List<String> getSpecialWriteSql() {
         return specialWriteSql;
     }
 
+    /**
+     * 特殊写sql的多模式匹配器，没有设置时为null
+     */
+    public static AhoCorasickMatcher getSpecialWriteSqlMatcher() {
+        return specialWriteSqlMatcher;
+    }
+
     public static void setSpecialWriteSql(List<String> specialWriteSql) {
         BaseService.specialWriteSql = specialWriteSql;
+        AhoCorasickMatcher matcher = specialWriteSql == null ? null : new AhoCorasickMatcher(specialWriteSql);
+        BaseService.specialWriteSqlMatcher = (matcher == null || matcher.isEmpty()) ? null : matcher;
+        routeService.clearCache();
     }
 
     public static RouteService getRouteService() {
         return routeService;
     }
 
+    /**
+     * 设置路由缓存的条目上限，0表示不使用路由缓存
+     */
+    public static void setRouteCacheSize(int routeCacheSize) {
+        routeService = new RouteService(routeCacheSize > 0 ? new CacheService(routeCacheSize) : null);
+    }
+
     private static String dbType;
 
     public static void setDbType(String dbType) {
@@ -60,8 +82,92 @@ public class BaseService {
     }
     public static void setRealTime(boolean realTime) {
         BaseService.realTime = realTime;
+        routeService.clearCache();
+    }
+
+    private static volatile Constant.ReadConsistency readConsistency = Constant.ReadConsistency.NONE;
+
+    public static Constant.ReadConsistency getReadConsistency() {
+        return readConsistency;
+    }
+
+    public static void setReadConsistency(Constant.ReadConsistency readConsistency) {
+        BaseService.readConsistency = readConsistency;
+    }
+
+    // STICKY模式下写之后读主库的时间窗口，毫秒
+    private static volatile long stickyMasterWindow = 500;
+
+    public static long getStickyMasterWindow() {
+        return stickyMasterWindow;
+    }
+
+    public static void setStickyMasterWindow(long stickyMasterWindow) {
+        BaseService.stickyMasterWindow = stickyMasterWindow;
+    }
+
+    // 批量执行单行insert时是否合并成多行insert，以及合并后每条语句的大小上限，字节
+    private static volatile boolean rewriteBatchedInserts;
+    private static volatile int maxBatchPacketSize = 1024 * 1024;
+
+    public static boolean isRewriteBatchedInserts() {
+        return rewriteBatchedInserts;
+    }
+
+    public static void setRewriteBatchedInserts(boolean rewriteBatchedInserts) {
+        BaseService.rewriteBatchedInserts = rewriteBatchedInserts;
+    }
+
+    public static int getMaxBatchPacketSize() {
+        return maxBatchPacketSize;
+    }
+
+    public static void setMaxBatchPacketSize(int maxBatchPacketSize) {
+        BaseService.maxBatchPacketSize = maxBatchPacketSize;
+    }
+
+    // 查询结果缓存，没有配置需要缓存的sql时为null
+    private static volatile ResultCache resultCache;
+
+    public static ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public static void setResultCache(ResultCache resultCache) {
+        BaseService.resultCache = resultCache;
+        // 已缓存的路由结果中没有解析表名
+        routeService.clearCache();
+    }
+
+    // 按主键的行缓存，没有配置开启行缓存的表时为null
+    private static volatile RowCache rowCache;
+
+    public static RowCache getRowCache() {
+        return rowCache;
+    }
+
+    /**
+     * @return 被替换下来的行缓存，由调用方释放
+     */
+    public static RowCache setRowCache(RowCache rowCache) {
+        RowCache old = BaseService.rowCache;
+        BaseService.rowCache = rowCache;
+        // 已缓存的路由结果中没有解析主键条件
+        routeService.clearCache();
+        return old;
+    }
+
+    // 按表名的路由规则，没有配置时为null
+    private static volatile TableRouteRules tableRouteRules;
+
+    public static TableRouteRules getTableRouteRules() {
+        return tableRouteRules;
+    }
+
+    public static void setTableRouteRules(TableRouteRules tableRouteRules) {
+        BaseService.tableRouteRules = tableRouteRules;
+        // 已缓存的路由结果是按原来的规则得到的
+        routeService.clearCache();
     }
 
-   
-    
 }
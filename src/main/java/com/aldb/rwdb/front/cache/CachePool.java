@@ -1,4 +1,3 @@
-
 package com.aldb.rwdb.front.cache;
 
 
@@ -8,7 +7,11 @@ public interface CachePool {
 
 	public Object get(Object key);
 
+	public void remove(Object key);
+
 	public void clearCache();
 
 	public long getMaxSize();
-}
\ No newline at end of file
+
+	public CacheStatic getCacheStatic();
+}
@@ -5,10 +5,17 @@ import org.apache.log4j.Logger;
 public class CacheService {
 	private static final Logger logger = Logger.getLogger(CacheService.class);
 
+	public static final int DEFAULT_ROUTE_CACHE_SIZE = 10000;
+
 	private CachePool cachePool;
 
 	public CacheService() {
+		this(DEFAULT_ROUTE_CACHE_SIZE);
+	}
+
+	public CacheService(long maxSize) {
 		//cachePool = CacheFactory.createCachePool();
+		cachePool = new LRUCachePool("routeCache", maxSize);
 	}
 
 	/**
@@ -0,0 +1,89 @@
+package com.aldb.rwdb.front.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存的统计信息，命中、未命中、写入次数
+ * 
+ */
+public class CacheStatic {
+
+	private final AtomicLong hitTimes = new AtomicLong();
+	private final AtomicLong missTimes = new AtomicLong();
+	private final AtomicLong putTimes = new AtomicLong();
+	private final AtomicLong evictTimes = new AtomicLong();
+	private volatile long itemSize;
+	private volatile long maxSize;
+
+	public void incHitTimes() {
+		hitTimes.incrementAndGet();
+	}
+
+	public void incMissTimes() {
+		missTimes.incrementAndGet();
+	}
+
+	public void incPutTimes() {
+		putTimes.incrementAndGet();
+	}
+
+	public void incEvictTimes() {
+		evictTimes.incrementAndGet();
+	}
+
+	public long getHitTimes() {
+		return hitTimes.get();
+	}
+
+	public long getMissTimes() {
+		return missTimes.get();
+	}
+
+	public long getAccessTimes() {
+		return hitTimes.get() + missTimes.get();
+	}
+
+	public long getPutTimes() {
+		return putTimes.get();
+	}
+
+	public long getEvictTimes() {
+		return evictTimes.get();
+	}
+
+	public double getHitRatio() {
+		long access = getAccessTimes();
+		return access == 0 ? 0 : (double) hitTimes.get() / access;
+	}
+
+	public long getItemSize() {
+		return itemSize;
+	}
+
+	public void setItemSize(long itemSize) {
+		this.itemSize = itemSize;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	public void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public void reset() {
+		hitTimes.set(0);
+		missTimes.set(0);
+		putTimes.set(0);
+		evictTimes.set(0);
+		itemSize = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStatic [hitTimes=" + hitTimes + ", missTimes=" + missTimes + ", putTimes=" + putTimes
+				+ ", evictTimes=" + evictTimes + ", itemSize=" + itemSize + ", maxSize=" + maxSize + "]";
+	}
+
+}
@@ -0,0 +1,144 @@
+package com.aldb.rwdb.front.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 有界的LRU缓存，按key的hash分段加锁，每个段是一个access-order的LinkedHashMap，
+ * 段内超出容量时淘汰最久未访问的条目。
+ * 
+ */
+public class LRUCachePool implements CachePool {
+
+	private static final int DEFAULT_SEGMENTS = 16;
+
+	private final String name;
+	private final long maxSize;
+	private final Segment[] segments;
+	private final int segmentMask;
+	private final CacheStatic cacheStatic = new CacheStatic();
+
+	public LRUCachePool(String name, long maxSize) {
+		this(name, maxSize, DEFAULT_SEGMENTS);
+	}
+
+	public LRUCachePool(String name, long maxSize, int concurrencyLevel) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("cache pool " + name + " maxSize must be positive");
+		}
+		int segmentCount = 1;
+		while (segmentCount < concurrencyLevel && segmentCount < maxSize) {
+			segmentCount <<= 1;
+		}
+		this.name = name;
+		this.maxSize = maxSize;
+		this.segmentMask = segmentCount - 1;
+		this.segments = new Segment[segmentCount];
+		int perSegment = (int) Math.max(1, maxSize / segmentCount);
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment(perSegment, cacheStatic);
+		}
+		cacheStatic.setMaxSize(maxSize);
+	}
+
+	private Segment segmentFor(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & segmentMask];
+	}
+
+	@Override
+	public void putIfAbsent(Object key, Object value) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			if (!segment.containsKey(key)) {
+				segment.put(key, value);
+				cacheStatic.incPutTimes();
+			}
+		}
+	}
+
+	@Override
+	public Object get(Object key) {
+		Segment segment = segmentFor(key);
+		Object value;
+		synchronized (segment) {
+			value = segment.get(key);
+		}
+		if (value == null) {
+			cacheStatic.incMissTimes();
+		} else {
+			cacheStatic.incHitTimes();
+		}
+		return value;
+	}
+
+	@Override
+	public void remove(Object key) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.remove(key);
+		}
+	}
+
+	@Override
+	public void clearCache() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	@Override
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	@Override
+	public CacheStatic getCacheStatic() {
+		cacheStatic.setItemSize(size());
+		return cacheStatic;
+	}
+
+	public long size() {
+		long size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return "LRUCachePool [name=" + name + ", " + getCacheStatic() + "]";
+	}
+
+	private static class Segment extends LinkedHashMap<Object, Object> {
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+		private final transient CacheStatic cacheStatic;
+
+		Segment(int capacity, CacheStatic cacheStatic) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+			this.cacheStatic = cacheStatic;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+			if (size() > capacity) {
+				cacheStatic.incEvictTimes();
+				return true;
+			}
+			return false;
+		}
+	}
+}
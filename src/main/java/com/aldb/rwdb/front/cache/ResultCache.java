@@ -0,0 +1,258 @@
+package com.aldb.rwdb.front.cache;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
+import com.aldb.rwdb.front.route.RouteResult;
+import com.aldb.rwdb.util.SQLNormalizer;
+
+/**
+ * 指定sql模板的查询结果缓存。key为sql(PreparedStatement为sql模板加参数值)，值为结果集的CachedRowSet副本，
+ * 并记录查询开始时所涉及的每个表的版本号。经过代理的写语句执行后其涉及的表版本号加1，
+ * 读取时版本号不一致的结果视为失效，因此失效只需要修改版本号，不需要扫描缓存。
+ * 容量按结果集估算的字节数限制，另外设有过期时间，避免从库延迟读到的旧数据一直留在缓存中。
+ * 表失效之后replicaLagTime内从库可能还没有同步这次写入，这段时间内只用主库上查到的结果填充缓存
+ *
+ */
+public class ResultCache {
+
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+	public static final long DEFAULT_TTL = 60000;
+	public static final long DEFAULT_REPLICA_LAG_TIME = 1000;
+
+	private final Set<String> templates;
+	private final WeightedLRUCachePool pool;
+	private final long ttl;
+	private final long replicaLagTime;
+
+	private final ConcurrentHashMap<String, AtomicLong> tableVersions = new ConcurrentHashMap<String, AtomicLong>();
+	// 无法确定写了哪些表时整体失效
+	private final AtomicLong globalVersion = new AtomicLong();
+	// 最近一次失效的时间，System.currentTimeMillis
+	private final ConcurrentHashMap<String, Long> invalidateTimes = new ConcurrentHashMap<String, Long>();
+	private volatile long globalInvalidateTime;
+
+	/**
+	 * @param templates
+	 *            需要缓存结果的sql，可以带常量或?，按SQLNormalizer规整后匹配
+	 * @param maxBytes
+	 *            缓存的结果集总共占用的字节数上限
+	 * @param ttl
+	 *            过期时间，毫秒，0表示不过期
+	 * @param replicaLagTime
+	 *            表失效之后多少毫秒内不用从库的结果填充缓存
+	 */
+	public ResultCache(Collection<String> templates, long maxBytes, long ttl, long replicaLagTime) {
+		this.templates = new HashSet<String>();
+		for (String template : templates) {
+			this.templates.add(canonical(SQLNormalizer.normalize(template.trim())));
+		}
+		this.pool = new WeightedLRUCachePool("resultCache", maxBytes);
+		this.ttl = ttl;
+		this.replicaLagTime = replicaLagTime;
+	}
+
+	/**
+	 * 是否缓存该路由结果对应的sql，只有指定的模板并且已经解析出涉及的表才缓存
+	 */
+	public boolean isCacheable(RouteResult rr) {
+		return rr != null && rr.isResultCacheable() && rr.getTables() != null;
+	}
+
+	/**
+	 * 路由时调用一次，结果记在RouteResult中
+	 */
+	public boolean isCacheableTemplate(String template) {
+		return template != null && templates.contains(canonical(template));
+	}
+
+	/**
+	 * 忽略空白和大小写，配置的模板与实际sql的空格写法不同也能匹配
+	 */
+	private static String canonical(String template) {
+		StringBuilder sb = new StringBuilder(template.length());
+		for (int i = 0; i < template.length(); i++) {
+			char c = template.charAt(i);
+			if (!Character.isWhitespace(c)) {
+				sb.append(Character.toLowerCase(c));
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return 未命中或已失效时返回null，命中时返回结果集的副本
+	 */
+	public ResultSet get(String key) throws SQLException {
+		CachedResult cached = (CachedResult) pool.get(key);
+		if (cached == null) {
+			return null;
+		}
+		if ((ttl > 0 && System.currentTimeMillis() > cached.expireAt) || !isCurrent(cached)) {
+			pool.remove(key);
+			return null;
+		}
+		return cached.rows.createCopy();
+	}
+
+	/**
+	 * 在查询执行之前获取涉及的表的版本号，查询期间有写入时缓存的结果立即失效
+	 */
+	public long[] snapshotVersions(String[] tables) {
+		long[] versions = new long[tables.length + 1];
+		versions[0] = globalVersion.get();
+		for (int i = 0; i < tables.length; i++) {
+			versions[i + 1] = versionOf(tables[i]).get();
+		}
+		return versions;
+	}
+
+	/**
+	 * 把查询结果读入内存并缓存，返回给调用方的是一个独立的副本
+	 *
+	 * @param fromReplica
+	 *            结果是否来自从库
+	 */
+	public ResultSet put(String key, String[] tables, long[] versions, boolean fromReplica, ResultSet rs)
+			throws SQLException {
+		CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+		try {
+			rows.populate(rs);
+		} finally {
+			rs.close();
+		}
+		CachedResult cached = new CachedResult(rows, tables, versions, ttl > 0 ? System.currentTimeMillis() + ttl
+				: Long.MAX_VALUE);
+		ResultSet copy = rows.createCopy();
+		if (isCurrent(cached) && !(fromReplica && isRecentlyInvalidated(tables))) {
+			pool.put(key, cached);
+		}
+		return copy;
+	}
+
+	/**
+	 * 写语句执行或提交之后调用
+	 *
+	 * @param tables
+	 *            写语句涉及的表，为null时全部失效
+	 */
+	public void invalidate(String[] tables) {
+		if (tables == null) {
+			globalInvalidateTime = System.currentTimeMillis();
+			globalVersion.incrementAndGet();
+			return;
+		}
+		for (String table : tables) {
+			invalidate(table);
+		}
+	}
+
+	public void invalidate(Collection<String> tables) {
+		for (String table : tables) {
+			invalidate(table);
+		}
+	}
+
+	private void invalidate(String table) {
+		invalidateTimes.put(table, System.currentTimeMillis());
+		versionOf(table).incrementAndGet();
+	}
+
+	public void clear() {
+		globalVersion.incrementAndGet();
+		pool.clearCache();
+	}
+
+	public CacheStatic getCacheStatic() {
+		return pool.getCacheStatic();
+	}
+
+	private boolean isRecentlyInvalidated(String[] tables) {
+		long since = System.currentTimeMillis() - replicaLagTime;
+		if (globalInvalidateTime >= since) {
+			return true;
+		}
+		for (String table : tables) {
+			Long time = invalidateTimes.get(table);
+			if (time != null && time >= since) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isCurrent(CachedResult cached) {
+		if (cached.versions[0] != globalVersion.get()) {
+			return false;
+		}
+		for (int i = 0; i < cached.tables.length; i++) {
+			if (cached.versions[i + 1] != versionOf(cached.tables[i]).get()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private AtomicLong versionOf(String table) {
+		AtomicLong version = tableVersions.get(table);
+		if (version == null) {
+			AtomicLong created = new AtomicLong();
+			version = tableVersions.putIfAbsent(table, created);
+			if (version == null) {
+				version = created;
+			}
+		}
+		return version;
+	}
+
+	private static class CachedResult implements Weighted {
+		final CachedRowSet rows;
+		final String[] tables;
+		final long[] versions;
+		final long expireAt;
+		final long weight;
+
+		CachedResult(CachedRowSet rows, String[] tables, long[] versions, long expireAt) throws SQLException {
+			this.rows = rows;
+			this.tables = tables;
+			this.versions = versions;
+			this.expireAt = expireAt;
+			this.weight = estimateWeight(rows);
+		}
+
+		@Override
+		public long getWeight() {
+			return weight;
+		}
+
+		private static long estimateWeight(CachedRowSet rows) throws SQLException {
+			int columns = rows.getMetaData().getColumnCount();
+			long weight = 256 + columns * 64L;
+			rows.beforeFirst();
+			while (rows.next()) {
+				weight += 32;
+				for (int i = 1; i <= columns; i++) {
+					Object value = rows.getObject(i);
+					if (value instanceof String) {
+						weight += 40 + ((String) value).length() * 2;
+					} else if (value instanceof byte[]) {
+						weight += 16 + ((byte[]) value).length;
+					} else {
+						weight += 24;
+					}
+				}
+			}
+			rows.beforeFirst();
+			return weight;
+		}
+	}
+
+}
@@ -0,0 +1,483 @@
+package com.aldb.rwdb.front.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.RowSetMetaData;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.HTreeMap;
+import org.mapdb.Serializer;
+
+/**
+ * 按主键的行缓存，缓存select ... from t where pk = ?的单行结果。行数据序列化后存放在MapDB的堆外内存中，不增加GC的负担，
+ * 堆内只保留每个sql模板的列信息。key由表的代数、模板指纹(已经区分了表)和主键值组成:
+ * 按主键的update、delete精确删除该主键在各模板下的缓存；不能确定主键的写语句把表的代数加1，旧的条目不再能访问，
+ * 由MapDB按容量和过期时间清除。只缓存查到一行的结果，新插入的行不会已经在缓存中，所以普通insert不需要失效。
+ * 表有写入之后replicaLagTime内只缓存主库上查到的行，避免缓存从库还没有同步的旧数据。
+ * 堆外内存在close之后释放，释放时还在访问缓存的调用结束之后才真正关闭，关闭之后的访问都按未命中处理
+ *
+ */
+public class RowCache {
+
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+	public static final long DEFAULT_TTL = 60000;
+
+	private static final char SEPARATOR = '\u0001';
+
+	private final Map<String, String> primaryKeys;
+	private final Map<String, TableState> tables;
+	private final ConcurrentHashMap<Long, RowSetMetaData> metaData = new ConcurrentHashMap<Long, RowSetMetaData>();
+	private final RowSetFactory rowSetFactory;
+	private final DB db;
+	private final HTreeMap<String, Object[]> rows;
+	private final CacheStatic cacheStatic = new CacheStatic();
+	private final long replicaLagTime;
+
+	// 正在访问堆外内存的调用数
+	private final AtomicInteger users = new AtomicInteger();
+	private volatile boolean closing;
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	/**
+	 * @param primaryKeys
+	 *            开启行缓存的表及其主键列，只支持单列主键
+	 * @param maxBytes
+	 *            堆外内存的上限
+	 * @param ttl
+	 *            过期时间，毫秒，0表示不过期
+	 * @param replicaLagTime
+	 *            表有写入之后多少毫秒内不缓存从库查到的行
+	 */
+	public RowCache(Map<String, String> primaryKeys, long maxBytes, long ttl, long replicaLagTime)
+			throws SQLException {
+		Map<String, String> keys = new HashMap<String, String>();
+		Map<String, TableState> states = new HashMap<String, TableState>();
+		for (Map.Entry<String, String> entry : primaryKeys.entrySet()) {
+			String table = entry.getKey().trim().toLowerCase();
+			keys.put(table, entry.getValue().trim().toLowerCase());
+			states.put(table, new TableState());
+		}
+		this.primaryKeys = Collections.unmodifiableMap(keys);
+		this.tables = states;
+		this.rowSetFactory = RowSetProvider.newFactory();
+		this.db = DBMaker.newMemoryDirectDB().transactionDisable().cacheDisable().make();
+		DB.HTreeMapMaker maker = db.createHashMap("rows").keySerializer(Serializer.STRING)
+				.valueSerializer(new RowSerializer()).expireStoreSize(maxBytes / (1024.0 * 1024 * 1024));
+		if (ttl > 0) {
+			maker.expireAfterWrite(ttl);
+		}
+		this.rows = maker.make();
+		cacheStatic.setMaxSize(maxBytes);
+		this.replicaLagTime = replicaLagTime;
+	}
+
+	/**
+	 * 开启行缓存的表及其主键列，均为小写
+	 */
+	public Map<String, String> getPrimaryKeys() {
+		return primaryKeys;
+	}
+
+	/**
+	 * @return 未命中时返回null
+	 */
+	public ResultSet get(long templateId, String table, String key) throws SQLException {
+		TableState state = tables.get(table);
+		RowSetMetaData meta = metaData.get(templateId);
+		Object[] row = null;
+		if (state != null && meta != null && acquire()) {
+			try {
+				row = rows.get(cacheKey(state, templateId, key));
+			} finally {
+				release();
+			}
+		}
+		if (row == null || row.length != meta.getColumnCount()) {
+			cacheStatic.incMissTimes();
+			return null;
+		}
+		cacheStatic.incHitTimes();
+		CachedRowSet crs = rowSetFactory.createCachedRowSet();
+		crs.setMetaData(meta);
+		crs.moveToInsertRow();
+		for (int i = 0; i < row.length; i++) {
+			crs.updateObject(i + 1, row[i]);
+		}
+		crs.insertRow();
+		crs.moveToCurrentRow();
+		crs.beforeFirst();
+		return crs;
+	}
+
+	/**
+	 * 查询执行之前调用，查询期间该表有写入时不缓存查询结果
+	 */
+	public long snapshot(String table) {
+		TableState state = tables.get(table);
+		return state == null ? 0 : state.writes.get();
+	}
+
+	/**
+	 * 把查询结果读入内存，只有一行时缓存，返回给调用方的是读入内存后的结果集
+	 *
+	 * @param fromReplica
+	 *            结果是否来自从库
+	 */
+	public ResultSet put(long templateId, String table, String key, long snapshot, boolean fromReplica,
+			ResultSet rs) throws SQLException {
+		CachedRowSet crs = rowSetFactory.createCachedRowSet();
+		try {
+			crs.populate(rs);
+		} finally {
+			rs.close();
+		}
+		TableState state = tables.get(table);
+		if (state == null || crs.size() != 1) {
+			return crs;
+		}
+		int columns = crs.getMetaData().getColumnCount();
+		Object[] row = new Object[columns];
+		crs.next();
+		for (int i = 0; i < columns; i++) {
+			row[i] = crs.getObject(i + 1);
+			if (!RowSerializer.isSupported(row[i])) {
+				crs.beforeFirst();
+				return crs;
+			}
+		}
+		crs.beforeFirst();
+		if (!metaData.containsKey(templateId)) {
+			metaData.putIfAbsent(templateId, (RowSetMetaData) crs.getMetaData());
+			state.templateIds.add(templateId);
+		}
+		if (fromReplica && state.writeTime >= System.currentTimeMillis() - replicaLagTime) {
+			return crs;
+		}
+		if (state.writes.get() == snapshot && acquire()) {
+			try {
+				String cacheKey = cacheKey(state, templateId, key);
+				rows.put(cacheKey, row);
+				cacheStatic.incPutTimes();
+				// 写入缓存的同时有写语句删除了该key
+				if (state.writes.get() != snapshot) {
+					rows.remove(cacheKey);
+				}
+			} finally {
+				release();
+			}
+		}
+		return crs;
+	}
+
+	/**
+	 * 按主键的写语句执行之后调用，删除这些主键在各模板下的缓存
+	 */
+	public void evict(String table, String[] keys) {
+		TableState state = tables.get(table);
+		if (state == null) {
+			return;
+		}
+		state.write();
+		if (!acquire()) {
+			return;
+		}
+		try {
+			for (Long templateId : state.templateIds) {
+				for (String key : keys) {
+					if (rows.remove(cacheKey(state, templateId, key)) != null) {
+						cacheStatic.incEvictTimes();
+					}
+				}
+			}
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * 不能确定主键的写语句执行之后调用，使整张表的缓存失效
+	 *
+	 * @param tables
+	 *            写语句涉及的表，为null时全部失效
+	 */
+	public void invalidate(String[] tables) {
+		if (tables == null) {
+			for (TableState state : this.tables.values()) {
+				state.invalidate();
+			}
+			return;
+		}
+		for (String table : tables) {
+			TableState state = this.tables.get(table);
+			if (state != null) {
+				state.invalidate();
+			}
+		}
+	}
+
+	public CacheStatic getCacheStatic() {
+		if (acquire()) {
+			try {
+				cacheStatic.setItemSize(rows.size());
+			} finally {
+				release();
+			}
+		}
+		return cacheStatic;
+	}
+
+	/**
+	 * 释放堆外内存，有调用正在访问时由最后一个结束的调用释放
+	 */
+	public void close() {
+		closing = true;
+		if (users.get() == 0) {
+			closeNow();
+		}
+	}
+
+	private boolean acquire() {
+		users.incrementAndGet();
+		if (closing) {
+			release();
+			return false;
+		}
+		return true;
+	}
+
+	private void release() {
+		if (users.decrementAndGet() == 0 && closing) {
+			closeNow();
+		}
+	}
+
+	private void closeNow() {
+		if (closed.compareAndSet(false, true)) {
+			db.close();
+		}
+	}
+
+	/**
+	 * 主键值的规范形式，数字常量和数字参数去掉多余的0，使sql常量与各种类型的参数得到同一个key
+	 */
+	public static String canonicalKey(String value, boolean numeric) {
+		if (numeric) {
+			try {
+				return new BigDecimal(value).stripTrailingZeros().toPlainString();
+			} catch (NumberFormatException e) {
+				return value;
+			}
+		}
+		return value;
+	}
+
+	private static String cacheKey(TableState state, long templateId, String key) {
+		return new StringBuilder(key.length() + 24).append(state.generation.get()).append(SEPARATOR)
+				.append(Long.toHexString(templateId)).append(SEPARATOR).append(key).toString();
+	}
+
+	private static class TableState {
+		final AtomicLong generation = new AtomicLong();
+		final AtomicLong writes = new AtomicLong();
+		final Set<Long> templateIds = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+		// 最近一次写入的时间，System.currentTimeMillis
+		volatile long writeTime;
+
+		void write() {
+			writeTime = System.currentTimeMillis();
+			writes.incrementAndGet();
+		}
+
+		void invalidate() {
+			write();
+			generation.incrementAndGet();
+		}
+	}
+
+	/**
+	 * 一行的列值，只支持常见的基本类型，按类型标记紧凑地写入堆外内存
+	 */
+	private static class RowSerializer implements Serializer<Object[]>, Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private static final Charset UTF8 = Charset.forName("UTF-8");
+
+		private static final byte NULL = 0;
+		private static final byte STRING = 1;
+		private static final byte INT = 2;
+		private static final byte LONG = 3;
+		private static final byte SHORT = 4;
+		private static final byte BYTE = 5;
+		private static final byte BOOLEAN = 6;
+		private static final byte DOUBLE = 7;
+		private static final byte FLOAT = 8;
+		private static final byte BIG_DECIMAL = 9;
+		private static final byte BIG_INTEGER = 10;
+		private static final byte BYTES = 11;
+		private static final byte DATE = 12;
+		private static final byte TIME = 13;
+		private static final byte TIMESTAMP = 14;
+
+		static boolean isSupported(Object value) {
+			return value == null || value instanceof String || value instanceof Integer || value instanceof Long
+					|| value instanceof Short || value instanceof Byte || value instanceof Boolean
+					|| value instanceof Double || value instanceof Float || value instanceof BigDecimal
+					|| value instanceof BigInteger || value instanceof byte[] || value instanceof java.sql.Date
+					|| value instanceof Time || value instanceof Timestamp;
+		}
+
+		@Override
+		public void serialize(DataOutput out, Object[] row) throws IOException {
+			out.writeInt(row.length);
+			for (Object value : row) {
+				if (value == null) {
+					out.writeByte(NULL);
+				} else if (value instanceof String) {
+					out.writeByte(STRING);
+					writeBytes(out, ((String) value).getBytes(UTF8));
+				} else if (value instanceof Integer) {
+					out.writeByte(INT);
+					out.writeInt((Integer) value);
+				} else if (value instanceof Long) {
+					out.writeByte(LONG);
+					out.writeLong((Long) value);
+				} else if (value instanceof Short) {
+					out.writeByte(SHORT);
+					out.writeShort((Short) value);
+				} else if (value instanceof Byte) {
+					out.writeByte(BYTE);
+					out.writeByte((Byte) value);
+				} else if (value instanceof Boolean) {
+					out.writeByte(BOOLEAN);
+					out.writeBoolean((Boolean) value);
+				} else if (value instanceof Double) {
+					out.writeByte(DOUBLE);
+					out.writeDouble((Double) value);
+				} else if (value instanceof Float) {
+					out.writeByte(FLOAT);
+					out.writeFloat((Float) value);
+				} else if (value instanceof BigDecimal) {
+					out.writeByte(BIG_DECIMAL);
+					writeBytes(out, value.toString().getBytes(UTF8));
+				} else if (value instanceof BigInteger) {
+					out.writeByte(BIG_INTEGER);
+					writeBytes(out, ((BigInteger) value).toByteArray());
+				} else if (value instanceof byte[]) {
+					out.writeByte(BYTES);
+					writeBytes(out, (byte[]) value);
+				} else if (value instanceof java.sql.Date) {
+					out.writeByte(DATE);
+					out.writeLong(((java.sql.Date) value).getTime());
+				} else if (value instanceof Time) {
+					out.writeByte(TIME);
+					out.writeLong(((Time) value).getTime());
+				} else if (value instanceof Timestamp) {
+					out.writeByte(TIMESTAMP);
+					out.writeLong(((Timestamp) value).getTime());
+					out.writeInt(((Timestamp) value).getNanos());
+				} else {
+					throw new IOException("unsupported row value type " + value.getClass().getName());
+				}
+			}
+		}
+
+		@Override
+		public Object[] deserialize(DataInput in, int available) throws IOException {
+			Object[] row = new Object[in.readInt()];
+			for (int i = 0; i < row.length; i++) {
+				byte type = in.readByte();
+				switch (type) {
+				case NULL:
+					break;
+				case STRING:
+					row[i] = new String(readBytes(in), UTF8);
+					break;
+				case INT:
+					row[i] = in.readInt();
+					break;
+				case LONG:
+					row[i] = in.readLong();
+					break;
+				case SHORT:
+					row[i] = in.readShort();
+					break;
+				case BYTE:
+					row[i] = in.readByte();
+					break;
+				case BOOLEAN:
+					row[i] = in.readBoolean();
+					break;
+				case DOUBLE:
+					row[i] = in.readDouble();
+					break;
+				case FLOAT:
+					row[i] = in.readFloat();
+					break;
+				case BIG_DECIMAL:
+					row[i] = new BigDecimal(new String(readBytes(in), UTF8));
+					break;
+				case BIG_INTEGER:
+					row[i] = new BigInteger(readBytes(in));
+					break;
+				case BYTES:
+					row[i] = readBytes(in);
+					break;
+				case DATE:
+					row[i] = new java.sql.Date(in.readLong());
+					break;
+				case TIME:
+					row[i] = new Time(in.readLong());
+					break;
+				case TIMESTAMP:
+					Timestamp ts = new Timestamp(in.readLong());
+					ts.setNanos(in.readInt());
+					row[i] = ts;
+					break;
+				default:
+					throw new IOException("unknown row value type " + type);
+				}
+			}
+			return row;
+		}
+
+		@Override
+		public int fixedSize() {
+			return -1;
+		}
+
+		private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		private static byte[] readBytes(DataInput in) throws IOException {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return bytes;
+		}
+	}
+
+}
@@ -0,0 +1,13 @@
+package com.aldb.rwdb.front.cache;
+
+/**
+ * 按占用字节数限制容量的缓存中，缓存值需要给出自己的大小
+ * 
+ */
+public interface Weighted {
+
+	/**
+	 * @return 估算的占用字节数
+	 */
+	public long getWeight();
+}
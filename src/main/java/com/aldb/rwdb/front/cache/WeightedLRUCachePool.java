@@ -0,0 +1,173 @@
+package com.aldb.rwdb.front.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按占用字节数限制容量的LRU缓存，与LRUCachePool一样按key的hash分段加锁，
+ * 每段的字节数超出上限时从最久未访问的条目开始淘汰。缓存值实现Weighted时按其大小计算，否则按1字节计算
+ * 
+ */
+public class WeightedLRUCachePool implements CachePool {
+
+	private static final int DEFAULT_SEGMENTS = 16;
+
+	private final String name;
+	private final long maxWeight;
+	private final Segment[] segments;
+	private final int segmentMask;
+	private final CacheStatic cacheStatic = new CacheStatic();
+
+	public WeightedLRUCachePool(String name, long maxWeight) {
+		if (maxWeight <= 0) {
+			throw new IllegalArgumentException("cache pool " + name + " maxWeight must be positive");
+		}
+		this.name = name;
+		this.maxWeight = maxWeight;
+		this.segmentMask = DEFAULT_SEGMENTS - 1;
+		this.segments = new Segment[DEFAULT_SEGMENTS];
+		for (int i = 0; i < DEFAULT_SEGMENTS; i++) {
+			segments[i] = new Segment(Math.max(1, maxWeight / DEFAULT_SEGMENTS));
+		}
+		cacheStatic.setMaxSize(maxWeight);
+	}
+
+	private Segment segmentFor(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & segmentMask];
+	}
+
+	private static long weightOf(Object value) {
+		return value instanceof Weighted ? ((Weighted) value).getWeight() : 1;
+	}
+
+	@Override
+	public void putIfAbsent(Object key, Object value) {
+		Segment segment = segmentFor(key);
+		long weight = weightOf(value);
+		if (weight > segment.capacity) {
+			// 比一个段还大的值不缓存，否则会把整段都挤出去
+			return;
+		}
+		synchronized (segment) {
+			if (!segment.map.containsKey(key)) {
+				segment.map.put(key, value);
+				segment.weight += weight;
+				cacheStatic.incPutTimes();
+				evict(segment);
+			}
+		}
+	}
+
+	/**
+	 * 与putIfAbsent不同，已有的值会被替换
+	 */
+	public void put(Object key, Object value) {
+		Segment segment = segmentFor(key);
+		long weight = weightOf(value);
+		synchronized (segment) {
+			Object old = segment.map.remove(key);
+			if (old != null) {
+				segment.weight -= weightOf(old);
+			}
+			if (weight > segment.capacity) {
+				return;
+			}
+			segment.map.put(key, value);
+			segment.weight += weight;
+			cacheStatic.incPutTimes();
+			evict(segment);
+		}
+	}
+
+	private void evict(Segment segment) {
+		Iterator<Map.Entry<Object, Object>> it = segment.map.entrySet().iterator();
+		while (segment.weight > segment.capacity && it.hasNext()) {
+			Map.Entry<Object, Object> eldest = it.next();
+			segment.weight -= weightOf(eldest.getValue());
+			it.remove();
+			cacheStatic.incEvictTimes();
+		}
+	}
+
+	@Override
+	public Object get(Object key) {
+		Segment segment = segmentFor(key);
+		Object value;
+		synchronized (segment) {
+			value = segment.map.get(key);
+		}
+		if (value == null) {
+			cacheStatic.incMissTimes();
+		} else {
+			cacheStatic.incHitTimes();
+		}
+		return value;
+	}
+
+	@Override
+	public void remove(Object key) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			Object old = segment.map.remove(key);
+			if (old != null) {
+				segment.weight -= weightOf(old);
+			}
+		}
+	}
+
+	@Override
+	public void clearCache() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.map.clear();
+				segment.weight = 0;
+			}
+		}
+	}
+
+	@Override
+	public long getMaxSize() {
+		return maxWeight;
+	}
+
+	/**
+	 * itemSize为当前占用的字节数
+	 */
+	@Override
+	public CacheStatic getCacheStatic() {
+		cacheStatic.setItemSize(getWeight());
+		return cacheStatic;
+	}
+
+	public long getWeight() {
+		long weight = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				weight += segment.weight;
+			}
+		}
+		return weight;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return "WeightedLRUCachePool [name=" + name + ", " + getCacheStatic() + "]";
+	}
+
+	private static class Segment {
+		final long capacity;
+		final LinkedHashMap<Object, Object> map = new LinkedHashMap<Object, Object>(16, 0.75f, true);
+		long weight;
+
+		Segment(long capacity) {
+			this.capacity = capacity;
+		}
+	}
+}
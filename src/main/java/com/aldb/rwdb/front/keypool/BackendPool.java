@@ -1,10 +1,29 @@
 package com.aldb.rwdb.front.keypool;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.log4j.Logger;
+
+import com.aldb.rwdb.front.keypool.support.RoundRobinLoadBalance;
+import com.aldb.rwdb.util.Constant;
+
 public class BackendPool {
 
+    private static Logger LOGGER = Logger.getLogger(BackendPool.class);
+
+    private static final PhysicalDatasource[] EMPTY = new PhysicalDatasource[0];
+
     private ThreadLocal<Random> random;
 
     private BackendPool() {
@@ -18,8 +37,39 @@ public class BackendPool {
         };
     }
 
+    // 全部配置的数据源，心跳摘除只修改存活标记，不从这里移除
     private ConcurrentHashMap<String, PhysicalDatasource> dbMap;
 
+    // 存活且延迟可接受的读库快照，只在增删数据源或延迟跨过阈值时整体替换，选择读库时无锁读取
+    private volatile PhysicalDatasource[] readDataSources = EMPTY;
+
+    // 从库组的成员，组名到读库名称
+    private volatile Map<String, Set<String>> replicaGroups = Collections.emptyMap();
+
+    // 熔断器断开或半开的读库，不在readDataSources中，只接受探测请求
+    private volatile PhysicalDatasource[] brokenDataSources = EMPTY;
+
+    private final CircuitBreakerConfig circuitBreakerConfig = new CircuitBreakerConfig();
+
+    // 每个从库组中可用的读库快照，与readDataSources同时重建
+    private volatile Map<String, PhysicalDatasource[]> groupDataSources = Collections.emptyMap();
+
+    // 没有指定从库组的读所用的组，为null时在全部读库中选择
+    private volatile String defaultReplicaGroup;
+
+    // 组内没有可用读库时允许转到其它组读库的从库组，其它组没有可用读库时读主库
+    private volatile Set<String> spillReplicaGroups = Collections.emptySet();
+
+    // 允许的最大复制延迟，毫秒，0表示不考虑延迟
+    private volatile long maxReplicationLag;
+
+    // 读己之写时从库的GTID集合超过该时间(毫秒)且不满足要求才按需重新读取
+    private volatile long gtidRefreshInterval = 50;
+
+    private volatile LoadBalanceStrategy loadBalance = new RoundRobinLoadBalance();
+
+    private volatile boolean latencyTracking;
+
     private static BackendPool instance = new BackendPool();
 
     public static BackendPool getInstance() {
@@ -31,50 +81,374 @@ public class BackendPool {
     }
 
     public void putDataSouce(String dsName, PhysicalDatasource ds) {
-        dbMap.putIfAbsent(dsName, ds);
-       /* if (dsName.startsWith(Constant.RW.READ.name())) {
-            readDataSourceSize.incrementAndGet();
-        } else {
-            writeDataSourceSize.incrementAndGet();
-        }*/
+        if (dbMap.putIfAbsent(dsName, ds) == null && isReadDataSource(dsName)) {
+            refreshReadDataSources();
+        }
     }
 
     public void removeDataSouce(String dsName) {
-        dbMap.remove(dsName);
-        /*if (dsName.startsWith(Constant.RW.READ.name())) {
-            readDataSourceSize.decrementAndGet();
-        } else {
-            writeDataSourceSize.decrementAndGet();
-        }*/
+        if (dbMap.remove(dsName) != null && isReadDataSource(dsName)) {
+            refreshReadDataSources();
+        }
+    }
+
+    /**
+     * 心跳失败时标记读库不可用，不再参与选择，但仍然保留在dbMap中，连接池的配置和关闭照常作用于它
+     */
+    public void markDown(String dsName) {
+        setAlive(dsName, false);
+    }
+
+    /**
+     * 心跳恢复时重新标记为可用
+     */
+    public void markUp(String dsName) {
+        setAlive(dsName, true);
+    }
+
+    private void setAlive(String dsName, boolean alive) {
+        PhysicalDatasource ds = dbMap.get(dsName);
+        if (ds != null && ds.isAlive() != alive) {
+            ds.setAlive(alive);
+            if (isReadDataSource(dsName)) {
+                refreshReadDataSources();
+            }
+        }
     }
 
     public boolean isAlive(String dsName) {
-        return dbMap.containsKey(dsName);
+        PhysicalDatasource ds = dbMap.get(dsName);
+        return ds != null && ds.isAlive();
     }
 
     public ConcurrentHashMap<String, PhysicalDatasource> getDbMap() {
         return dbMap;
     }
 
-/*    private AtomicInteger readDataSourceSize = new AtomicInteger(0);
+    public void setLoadBalance(LoadBalanceStrategy loadBalance) {
+        this.loadBalance = loadBalance;
+        this.latencyTracking = loadBalance instanceof LatencyAwareLoadBalance;
+    }
 
-    private AtomicInteger writeDataSourceSize = new AtomicInteger(0);
+    /**
+     * 当前的负载均衡策略是否使用语句执行耗时，不使用时执行语句不记录耗时
+     */
+    public boolean isLatencyTracking() {
+        return latencyTracking;
+    }
 
-    public int getWriteDataSourceSize() {
-        return writeDataSourceSize.get();
+    public LoadBalanceStrategy getLoadBalance() {
+        return loadBalance;
+    }
+
+    public long getMaxReplicationLag() {
+        return maxReplicationLag;
+    }
+
+    public void setMaxReplicationLag(long maxReplicationLag) {
+        this.maxReplicationLag = maxReplicationLag;
+        refreshReadDataSources();
+    }
+
+    /**
+     * 更新从库的复制延迟，延迟跨过阈值时重建可选的读库快照
+     */
+    public void updateReplicationLag(PhysicalDatasource ds, long lag) {
+        boolean before = isLagAcceptable(ds.getReplicationLag());
+        ds.setReplicationLag(lag);
+        if (before != isLagAcceptable(lag)) {
+            refreshReadDataSources();
+        }
+    }
+
+    private boolean isLagAcceptable(long lag) {
+        long max = maxReplicationLag;
+        return max <= 0 || lag <= max;
     }
 
     public int getReadDataSourceSize() {
-        return readDataSourceSize.get();
+        return readDataSources.length;
+    }
+
+    /**
+     * 设置从库组，替换原有的全部分组
+     * 
+     * @param groups
+     *            组名到读库名称(READ-i)，一个读库可以属于多个组
+     */
+    public void setReplicaGroups(Map<String, ? extends Collection<String>> groups) {
+        Map<String, Set<String>> copy = new HashMap<String, Set<String>>();
+        for (Map.Entry<String, ? extends Collection<String>> entry : groups.entrySet()) {
+            copy.put(entry.getKey(), new HashSet<String>(entry.getValue()));
+        }
+        synchronized (this) {
+            replicaGroups = copy;
+        }
+        refreshReadDataSources();
+    }
+
+    public synchronized Map<String, Set<String>> getReplicaGroups() {
+        return Collections.unmodifiableMap(replicaGroups);
+    }
+
+    /**
+     * 设置组内没有可用读库时可以转到全部读库中选择的从库组，不在其中的组(默认全部)直接读主库，保证组之间的隔离
+     */
+    public void setSpillReplicaGroups(Collection<String> groups) {
+        spillReplicaGroups = new HashSet<String>(groups);
+    }
+
+    public Set<String> getSpillReplicaGroups() {
+        return Collections.unmodifiableSet(spillReplicaGroups);
+    }
+
+    /**
+     * 所有物理库共用的熔断参数，修改立即生效
+     */
+    public CircuitBreakerConfig getCircuitBreakerConfig() {
+        return circuitBreakerConfig;
+    }
+
+    /**
+     * 开启或关闭熔断，关闭时断开的读库立即恢复可选
+     */
+    public void setCircuitBreakerEnabled(boolean enabled) {
+        circuitBreakerConfig.setEnabled(enabled);
+        refreshReadDataSources();
+    }
+
+    /**
+     * 熔断器在闭合与断开之间变化时，重建可选的读库快照
+     */
+    void onCircuitBreakerChanged() {
+        refreshReadDataSources();
+    }
+
+    /**
+     * 设置路由到READ的读所用的从库组，使其它组(如报表组)的从库不承担普通的读
+     */
+    public void setDefaultReplicaGroup(String defaultReplicaGroup) {
+        this.defaultReplicaGroup = defaultReplicaGroup;
+    }
+
+    public String getDefaultReplicaGroup() {
+        return defaultReplicaGroup;
+    }
+
+    /**
+     * 根据路由结果获取物理库，读库在存活的读库中按负载均衡策略选择
+     * 
+     * 读库全部不可用时(被心跳摘除或复制延迟超过上限)，读操作转移到主库；指定的从库组(或默认组)没有可用的读库时，
+     * 同样读主库，不占用其它组的从库，除非该组通过setSpillReplicaGroups允许转到全部读库中选择
+     * 
+     * @param target
+     *            路由结果WRITE、READ或READ:组名
+     * @return 没有可用的库时返回null
+     */
+    public PhysicalDatasource selectDataSource(String target) {
+        if (Constant.isReadTarget(target)) {
+            PhysicalDatasource probe = selectProbe(target);
+            if (probe != null) {
+                return probe;
+            }
+            PhysicalDatasource[] dataSources = getReadDataSources(target);
+            PhysicalDatasource ds = select(dataSources);
+            if (ds == null && dataSources != readDataSources
+                    && spillReplicaGroups.contains(getTargetGroup(target))) {
+                ds = getAlivePhysicalDatasource();
+            }
+            if (ds != null) {
+                return ds;
+            }
+            return dbMap.get(Constant.RW.WRITE.name());
+        }
+        return dbMap.get(target);
+    }
+
+    /**
+     * 选择一个已经执行了required中全部事务的读库，先按负载均衡策略选，不满足再依次查找
+     * 
+     * @return 没有满足的读库时返回null
+     */
+    public PhysicalDatasource selectReadDataSource(GtidSet required) {
+        return selectReadDataSource(Constant.RW.READ.name(), required);
+    }
+
+    /**
+     * 在路由目标对应的读库中选择已经执行了required中全部事务的读库
+     */
+    public PhysicalDatasource selectReadDataSource(String target, GtidSet required) {
+        PhysicalDatasource[] dataSources = getReadDataSources(target);
+        PhysicalDatasource ds = select(dataSources);
+        if (ds == null || hasExecuted(ds, required)) {
+            return ds;
+        }
+        for (PhysicalDatasource candidate : dataSources) {
+            if (hasExecuted(candidate, required)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读库当前是否可用:存活且复制延迟在上限之内
+     */
+    public boolean isReadable(PhysicalDatasource ds) {
+        return contains(readDataSources, ds);
+    }
+
+    /**
+     * 读库当前是否可以执行路由到target的读:可用且属于指定的从库组
+     */
+    public boolean isReadable(PhysicalDatasource ds, String target) {
+        return contains(getReadDataSources(target), ds);
+    }
+
+    private static boolean contains(PhysicalDatasource[] dataSources, PhysicalDatasource ds) {
+        for (PhysicalDatasource candidate : dataSources) {
+            if (candidate == ds) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 熔断的读库到了半开时放行少量探测请求
+     */
+    private PhysicalDatasource selectProbe(String target) {
+        PhysicalDatasource[] broken = brokenDataSources;
+        if (broken.length == 0) {
+            return null;
+        }
+        String group = Constant.getTargetGroup(target);
+        Set<String> members = null;
+        if (group != null || (group = defaultReplicaGroup) != null) {
+            members = replicaGroups.get(group);
+            if (members == null) {
+                return null;
+            }
+        }
+        for (PhysicalDatasource ds : broken) {
+            if ((members == null || members.contains(ds.getName())) && ds.getCircuitBreaker().tryAcquireProbe()) {
+                return ds;
+            }
+        }
+        return null;
     }
-*/
- /*   public PhysicalDatasource getAlivePhysicalDatasource() {
-        Collection<PhysicalDatasource> collection = BackendPool.getInstance().getDbMap().values();
-        PhysicalDatasource[] newArray = new PhysicalDatasource[collection.size()];
-        collection.toArray(newArray);
-        int randomNum = random.get().nextInt(collection.size());
 
-        return newArray[randomNum];
-    }*/
+    private String getTargetGroup(String target) {
+        String group = Constant.getTargetGroup(target);
+        return group != null ? group : defaultReplicaGroup;
+    }
+
+    /**
+     * 路由目标对应的可用读库，READ为默认组或全部读库，READ:组名为组内的读库
+     */
+    private PhysicalDatasource[] getReadDataSources(String target) {
+        String group = Constant.getTargetGroup(target);
+        if (group == null) {
+            group = defaultReplicaGroup;
+            if (group == null) {
+                return readDataSources;
+            }
+        }
+        PhysicalDatasource[] dataSources = groupDataSources.get(group);
+        return dataSources == null ? EMPTY : dataSources;
+    }
+
+    /**
+     * 读库是否已经执行了required中的全部事务，心跳刷新的集合可能是一个心跳间隔之前的，
+     * 不满足时按gtidRefreshInterval限制频率重新读取一次
+     */
+    public boolean hasExecuted(PhysicalDatasource ds, GtidSet required) {
+        GtidSet executed = ds.getExecutedGtidSet();
+        if (executed != null && executed.contains(required)) {
+            return true;
+        }
+        try {
+            executed = ds.refreshExecutedGtidSet(gtidRefreshInterval);
+        } catch (SQLException e) {
+            LOGGER.warn("DataSource " + ds.getName() + " fetch gtid_executed error", e);
+            return false;
+        }
+        return executed != null && executed.contains(required);
+    }
+
+    public long getGtidRefreshInterval() {
+        return gtidRefreshInterval;
+    }
+
+    public void setGtidRefreshInterval(long gtidRefreshInterval) {
+        this.gtidRefreshInterval = gtidRefreshInterval;
+    }
+
+    public PhysicalDatasource getAlivePhysicalDatasource() {
+        return select(readDataSources);
+    }
+
+    private PhysicalDatasource select(PhysicalDatasource[] dataSources) {
+        switch (dataSources.length) {
+        case 0:
+            return null;
+        case 1:
+            return dataSources[0];
+        default:
+            Random r = random.get();
+            PhysicalDatasource ds = loadBalance.select(dataSources, r);
+            if (ds.isSaturated()) {
+                // 选中的库连接池已满，借用要等待，优先换一个还有空闲连接的库。
+                // 从随机位置开始扫描，溢出的读不会全部压到排在前面的库上
+                int length = dataSources.length;
+                int start = r.nextInt(length);
+                for (int i = 0; i < length; i++) {
+                    PhysicalDatasource candidate = dataSources[(start + i) % length];
+                    if (!candidate.isSaturated()) {
+                        return candidate;
+                    }
+                }
+            }
+            return ds;
+        }
+    }
+
+    private static boolean isReadDataSource(String dsName) {
+        return dsName.startsWith(Constant.RW.READ.name());
+    }
+
+    private synchronized void refreshReadDataSources() {
+        List<PhysicalDatasource> list = new ArrayList<PhysicalDatasource>();
+        List<PhysicalDatasource> broken = new ArrayList<PhysicalDatasource>();
+        for (Map.Entry<String, PhysicalDatasource> entry : dbMap.entrySet()) {
+            if (isReadDataSource(entry.getKey()) && entry.getValue().isAlive()
+                    && isLagAcceptable(entry.getValue().getReplicationLag())) {
+                if (entry.getValue().getCircuitBreaker().isClosed()) {
+                    list.add(entry.getValue());
+                } else {
+                    broken.add(entry.getValue());
+                }
+            }
+        }
+        brokenDataSources = broken.toArray(new PhysicalDatasource[broken.size()]);
+        Collections.sort(list, new Comparator<PhysicalDatasource>() {
+            @Override
+            public int compare(PhysicalDatasource o1, PhysicalDatasource o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+        Map<String, PhysicalDatasource[]> groups = new HashMap<String, PhysicalDatasource[]>();
+        for (Map.Entry<String, Set<String>> entry : replicaGroups.entrySet()) {
+            List<PhysicalDatasource> members = new ArrayList<PhysicalDatasource>();
+            for (PhysicalDatasource ds : list) {
+                if (entry.getValue().contains(ds.getName())) {
+                    members.add(ds);
+                }
+            }
+            groups.put(entry.getKey(), members.toArray(new PhysicalDatasource[members.size()]));
+        }
+        groupDataSources = groups;
+        readDataSources = list.toArray(new PhysicalDatasource[list.size()]);
+    }
 
 }
@@ -0,0 +1,210 @@
+package com.aldb.rwdb.front.keypool;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 一个物理库的熔断器。闭合时统计执行结果，连续失败次数、滑动窗口内的失败比例或慢调用比例超过阈值时断开；
+ * 断开的读库立即从可选的读库中摘除，经过openTime之后进入半开，只放行少量探测请求，全部成功则闭合，任一失败则重新断开。
+ * 只有连接、超时类的异常算失败，sql本身的错误(语法、约束等)不算
+ *
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    // 滑动窗口分成的桶数
+    static final int BUCKETS = 10;
+
+    private final String name;
+    private final CircuitBreakerConfig config;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt; // 最近一次断开或进入半开的时间，System.nanoTime
+    private final AtomicInteger probes = new AtomicInteger(); // 半开时已放行还没有结果的探测数
+
+    // 以下由this保护
+    private int consecutiveFailures;
+    private int probeSuccesses;
+    private final long[] bucketEpochs = new long[BUCKETS];
+    private final int[] calls = new int[BUCKETS];
+    private final int[] failures = new int[BUCKETS];
+    private final int[] slowCalls = new int[BUCKETS];
+
+    public CircuitBreaker(String name, CircuitBreakerConfig config) {
+        this.name = name;
+        this.config = config;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 未开启熔断或处于闭合状态
+     */
+    public boolean isClosed() {
+        return !config.isEnabled() || state == State.CLOSED;
+    }
+
+    /**
+     * 断开超过openTime后进入半开，半开时同时放行的探测请求不超过halfOpenCalls；半开超过openTime还没有得到足够的结果时，
+     * 之前放行的探测视为丢失，重新放行
+     *
+     * @return 是否可以向该库发送一个探测请求
+     */
+    public boolean tryAcquireProbe() {
+        if (!config.isEnabled() || state == State.CLOSED) {
+            return false;
+        }
+        long now = System.nanoTime();
+        long openTime = config.getOpenTime() * 1000000L;
+        if (now - openedAt >= openTime) {
+            synchronized (this) {
+                if (state != State.CLOSED && now - openedAt >= openTime) {
+                    if (state == State.OPEN) {
+                        state = State.HALF_OPEN;
+                        probeSuccesses = 0;
+                        log.info("circuit breaker of {} is half open", name);
+                    }
+                    probes.set(0);
+                    openedAt = now;
+                }
+            }
+        }
+        return state == State.HALF_OPEN && acquire();
+    }
+
+    private boolean acquire() {
+        int n;
+        do {
+            n = probes.get();
+            if (n >= config.getHalfOpenCalls()) {
+                return false;
+            }
+        } while (!probes.compareAndSet(n, n + 1));
+        return true;
+    }
+
+    /**
+     * 记录一次执行结果
+     *
+     * @return 状态是否在闭合与断开之间发生了变化，需要重建可选的读库
+     */
+    public boolean record(long nanos, SQLException error) {
+        if (!config.isEnabled()) {
+            return false;
+        }
+        boolean failure = error != null && isBackendFailure(error);
+        long slowCallTime = config.getSlowCallTime();
+        boolean slow = slowCallTime > 0 && nanos > slowCallTime * 1000000L;
+        synchronized (this) {
+            switch (state) {
+            case HALF_OPEN:
+                if (probes.get() > 0) {
+                    probes.decrementAndGet();
+                }
+                if (failure || slow) {
+                    open("probe " + (failure ? "failed" : "slow"));
+                } else if (++probeSuccesses >= config.getHalfOpenCalls()) {
+                    close();
+                    return true;
+                }
+                return false;
+            case OPEN:
+                // 断开之前发出的请求
+                return false;
+            default:
+                return recordClosed(failure, slow);
+            }
+        }
+    }
+
+    private boolean recordClosed(boolean failure, boolean slow) {
+        long bucketTime = config.getWindowTime() * 1000000L / BUCKETS;
+        long epoch = System.nanoTime() / bucketTime;
+        int index = (int) ((epoch % BUCKETS + BUCKETS) % BUCKETS); // nanoTime可能为负数
+        if (bucketEpochs[index] != epoch) {
+            bucketEpochs[index] = epoch;
+            calls[index] = 0;
+            failures[index] = 0;
+            slowCalls[index] = 0;
+        }
+        calls[index]++;
+        if (failure) {
+            failures[index]++;
+            if (++consecutiveFailures >= config.getFailureThreshold()) {
+                open(consecutiveFailures + " consecutive failures");
+                return true;
+            }
+        } else {
+            consecutiveFailures = 0;
+        }
+        if (slow) {
+            slowCalls[index]++;
+        }
+        if (!failure && !slow) {
+            return false;
+        }
+        int totalCalls = 0, totalFailures = 0, totalSlowCalls = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (epoch - bucketEpochs[i] < BUCKETS) {
+                totalCalls += calls[i];
+                totalFailures += failures[i];
+                totalSlowCalls += slowCalls[i];
+            }
+        }
+        if (totalCalls < config.getMinimumCalls()) {
+            return false;
+        }
+        if (totalFailures >= totalCalls * config.getFailureRateThreshold()) {
+            open("failure rate " + totalFailures + "/" + totalCalls);
+            return true;
+        }
+        if (config.getSlowCallTime() > 0 && totalSlowCalls >= totalCalls * config.getSlowCallRateThreshold()) {
+            open("slow call rate " + totalSlowCalls + "/" + totalCalls);
+            return true;
+        }
+        return false;
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        log.warn("circuit breaker of {} is open: {}", name, reason);
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            calls[i] = 0;
+            failures[i] = 0;
+            slowCalls[i] = 0;
+        }
+        log.info("circuit breaker of {} is closed", name);
+    }
+
+    /**
+     * 连接失败、超时等说明物理库不可用的异常，sqlState为08(连接异常)也算
+     */
+    public static boolean isBackendFailure(SQLException e) {
+        if (e instanceof SQLTimeoutException || e instanceof SQLTransientConnectionException
+                || e instanceof SQLNonTransientConnectionException || e instanceof SQLRecoverableException) {
+            return true;
+        }
+        String state = e.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+}
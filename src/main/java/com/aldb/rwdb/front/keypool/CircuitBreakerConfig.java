@@ -0,0 +1,123 @@
+package com.aldb.rwdb.front.keypool;
+
+/**
+ * 熔断器的参数，所有物理库共用一份，修改立即生效
+ *
+ */
+public class CircuitBreakerConfig {
+
+    private volatile boolean enabled;
+
+    // 连续失败多少次断开
+    private volatile int failureThreshold = 5;
+
+    // 滑动窗口内失败比例达到多少断开
+    private volatile double failureRateThreshold = 0.5;
+
+    // 执行超过多少毫秒算慢调用，0表示不统计
+    private volatile long slowCallTime;
+
+    // 滑动窗口内慢调用比例达到多少断开
+    private volatile double slowCallRateThreshold = 0.5;
+
+    // 滑动窗口内至少有多少次调用才按比例判断
+    private volatile int minimumCalls = 20;
+
+    // 滑动窗口的长度，毫秒
+    private volatile long windowTime = 10000;
+
+    // 断开多久之后进入半开，毫秒
+    private volatile long openTime = 5000;
+
+    // 半开时同时放行的探测请求数，全部成功后闭合
+    private volatile int halfOpenCalls = 3;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be positive");
+        }
+        this.failureThreshold = failureThreshold;
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        checkRate(failureRateThreshold);
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public long getSlowCallTime() {
+        return slowCallTime;
+    }
+
+    public void setSlowCallTime(long slowCallTime) {
+        this.slowCallTime = slowCallTime;
+    }
+
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+        checkRate(slowCallRateThreshold);
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    public long getWindowTime() {
+        return windowTime;
+    }
+
+    public void setWindowTime(long windowTime) {
+        if (windowTime < CircuitBreaker.BUCKETS) {
+            throw new IllegalArgumentException("windowTime must be at least " + CircuitBreaker.BUCKETS + "ms");
+        }
+        this.windowTime = windowTime;
+    }
+
+    public long getOpenTime() {
+        return openTime;
+    }
+
+    public void setOpenTime(long openTime) {
+        this.openTime = openTime;
+    }
+
+    public int getHalfOpenCalls() {
+        return halfOpenCalls;
+    }
+
+    public void setHalfOpenCalls(int halfOpenCalls) {
+        if (halfOpenCalls < 1) {
+            throw new IllegalArgumentException("halfOpenCalls must be positive");
+        }
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    private static void checkRate(double rate) {
+        if (rate <= 0 || rate > 1) {
+            throw new IllegalArgumentException("rate must be in (0, 1]");
+        }
+    }
+}
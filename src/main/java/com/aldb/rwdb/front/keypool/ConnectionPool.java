@@ -0,0 +1,457 @@
+package com.aldb.rwdb.front.keypool;
+
+import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * 内置的连接池，直接由jdbc url创建，可以代替用户传入的DataSource，避免两层连接池叠加，
+ * 同时让路由能直接看到每个物理库连接池的使用情况
+ *
+ * 借用连接时不加锁:先从当前线程最近归还的连接中CAS借用，再扫描全部连接，都不空闲且未达到上限时新建，
+ * 否则等待其它线程归还时直接移交，超过connectionTimeout仍拿不到则抛异常。新建连接失败时立即抛出，不等待超时。
+ * 新建物理连接在单独的线程中进行，最多等到借用的截止时间(设置了loginTimeout时不超过loginTimeout)，
+ * 库不可达时借用也会按时失败，而不是卡在驱动的TCP连接上；MySQL驱动同时设置connectTimeout。
+ * 连接空闲超过validationIdleTime才在借出前做有效性检查，刚用过的连接不再ping
+ *
+ */
+public class ConnectionPool implements DataSource {
+
+    private static org.slf4j.Logger log = LoggerFactory.getLogger(ConnectionPool.class);
+
+    public static final int DEFAULT_MAX_POOL_SIZE = 10;
+
+    // 每个线程最多记住的最近归还的连接数
+    private static final int THREAD_LOCAL_SIZE = 16;
+
+    // 等待移交时每次等待的最长时间，超过后重新扫描一遍，防止错过在等待之前刚归还的连接
+    private static final long HANDOFF_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    // 新建连接的状态，超时放弃后才建好的连接由创建线程关闭
+    private static final int CREATING = 0;
+    private static final int CREATED = 1;
+    private static final int ABANDONED = 2;
+
+    private static final ExecutorService CREATOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "rwdb-connection-creator-" + index.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final String name;
+    private final String url;
+    private final Properties properties;
+
+    private volatile int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
+    private volatile long connectionTimeout = 3000;
+    private volatile long validationIdleTime = 500;
+    private volatile int validationTimeout = 3;
+
+    private final CopyOnWriteArrayList<PooledConnection> connections = new CopyOnWriteArrayList<PooledConnection>();
+    private final ThreadLocal<List<WeakReference<PooledConnection>>> threadConnections;
+    private final SynchronousQueue<PooledConnection> handoffQueue = new SynchronousQueue<PooledConnection>(true);
+
+    // 已创建和正在创建的连接数，创建前先占位，保证不超过上限
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger waitingCount = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    private PrintWriter logWriter;
+    private volatile int loginTimeout;
+
+    public ConnectionPool(String name, String url, String user, String password) {
+        this.name = name;
+        this.url = url;
+        this.properties = new Properties();
+        if (user != null) {
+            properties.setProperty("user", user);
+        }
+        if (password != null) {
+            properties.setProperty("password", password);
+        }
+        this.threadConnections = new ThreadLocal<List<WeakReference<PooledConnection>>>() {
+            @Override
+            protected List<WeakReference<PooledConnection>> initialValue() {
+                return new ArrayList<WeakReference<PooledConnection>>(THREAD_LOCAL_SIZE);
+            }
+        };
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectionTimeout);
+        for (;;) {
+            PooledConnection pc = borrow(deadline);
+            if (isUsable(pc)) {
+                activeCount.incrementAndGet();
+                return pc.open();
+            }
+            discard(pc);
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("pool " + name + " only support getConnection()");
+    }
+
+    /**
+     * 不经过连接池直接创建一个物理连接，用于心跳之类需要独占连接的场景，由调用方负责关闭
+     */
+    public Connection createRawConnection() throws SQLException {
+        long timeout = loginTimeout > 0 ? TimeUnit.SECONDS.toMillis(loginTimeout) : connectionTimeout;
+        return createRawConnection(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+    }
+
+    private Connection createRawConnection(long deadline) throws SQLException {
+        if (loginTimeout > 0) {
+            deadline = Math.min(deadline, System.nanoTime() + TimeUnit.SECONDS.toNanos(loginTimeout));
+        }
+        final Properties connectProperties = connectProperties(deadline);
+        final AtomicInteger state = new AtomicInteger(CREATING);
+        Future<Connection> future = CREATOR.submit(new Callable<Connection>() {
+            @Override
+            public Connection call() throws SQLException {
+                Connection conn = DriverManager.getConnection(url, connectProperties);
+                if (!state.compareAndSet(CREATING, CREATED)) {
+                    closeQuietly(conn);
+                }
+                return conn;
+            }
+        });
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            abandon(future, state);
+            throw new SQLTransientConnectionException(String.format("pool %s create connection timeout, url=%s",
+                    name, url), "08001", e);
+        } catch (InterruptedException e) {
+            abandon(future, state);
+            Thread.currentThread().interrupt();
+            throw new SQLException("pool " + name + " create connection interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException("pool " + name + " create connection error", cause);
+        }
+    }
+
+    /**
+     * 放弃等待新建的连接，已经建好的连接直接关闭
+     */
+    private void abandon(Future<Connection> future, AtomicInteger state) {
+        if (state.compareAndSet(CREATING, ABANDONED)) {
+            future.cancel(true);
+            return;
+        }
+        try {
+            closeQuietly(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // 创建失败，没有需要关闭的连接
+        }
+    }
+
+    private Properties connectProperties(long deadline) {
+        if (!url.startsWith("jdbc:mysql:") || url.contains("connectTimeout=")
+                || properties.containsKey("connectTimeout")) {
+            return properties;
+        }
+        Properties connectProperties = new Properties();
+        connectProperties.putAll(properties);
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+        connectProperties.setProperty("connectTimeout", String.valueOf(millis));
+        return connectProperties;
+    }
+
+    private void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            log.warn("pool " + name + " close abandoned connection error", e);
+        }
+    }
+
+    private PooledConnection borrow(long deadline) throws SQLException {
+        if (closed) {
+            throw new SQLException("pool " + name + " is closed");
+        }
+        List<WeakReference<PooledConnection>> recent = threadConnections.get();
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            PooledConnection pc = recent.remove(i).get();
+            if (pc != null && pc.tryReserve()) {
+                return pc;
+            }
+        }
+
+        waitingCount.incrementAndGet();
+        try {
+            for (;;) {
+                PooledConnection pc = scan();
+                if (pc != null) {
+                    return pc;
+                }
+                pc = tryCreate(deadline);
+                if (pc != null) {
+                    return pc;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SQLTransientConnectionException(String.format(
+                            "pool %s get connection timeout after %dms, active=%d, total=%d", name,
+                            connectionTimeout, activeCount.get(), totalCount.get()));
+                }
+                try {
+                    pc = handoffQueue.poll(Math.min(remaining, HANDOFF_SLICE_NANOS), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("pool " + name + " get connection interrupted", e);
+                }
+                if (pc != null && pc.tryReserve()) {
+                    return pc;
+                }
+                if (closed) {
+                    throw new SQLException("pool " + name + " is closed");
+                }
+            }
+        } finally {
+            waitingCount.decrementAndGet();
+        }
+    }
+
+    private PooledConnection scan() {
+        for (PooledConnection pc : connections) {
+            if (pc.tryReserve()) {
+                return pc;
+            }
+        }
+        return null;
+    }
+
+    private PooledConnection tryCreate(long deadline) throws SQLException {
+        for (;;) {
+            int total = totalCount.get();
+            if (total >= maxPoolSize) {
+                return null;
+            }
+            if (totalCount.compareAndSet(total, total + 1)) {
+                break;
+            }
+        }
+        try {
+            PooledConnection pc = new PooledConnection(this, createRawConnection(deadline));
+            pc.tryReserve();
+            connections.add(pc);
+            return pc;
+        } catch (SQLException e) {
+            totalCount.decrementAndGet();
+            throw e;
+        } catch (RuntimeException e) {
+            totalCount.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private boolean isUsable(PooledConnection pc) {
+        if (System.currentTimeMillis() - pc.getLastAccess() < validationIdleTime) {
+            return true;
+        }
+        try {
+            return pc.getRawConnection().isValid(validationTimeout);
+        } catch (SQLException e) {
+            log.warn("pool " + name + " validate connection error", e);
+            return false;
+        }
+    }
+
+    /**
+     * 连接使用完毕归还，有线程在等待时直接移交给它，同时记到当前线程最近归还的连接中
+     */
+    void release(PooledConnection pc) {
+        activeCount.decrementAndGet();
+        if (closed || pc.isBroken() || !pc.reset()) {
+            discard(pc);
+            return;
+        }
+        pc.free();
+        if (waitingCount.get() > 0) {
+            handoffQueue.offer(pc);
+        }
+        List<WeakReference<PooledConnection>> recent = threadConnections.get();
+        if (recent.size() >= THREAD_LOCAL_SIZE) {
+            recent.remove(0);
+        }
+        recent.add(new WeakReference<PooledConnection>(pc));
+    }
+
+    private void discard(PooledConnection pc) {
+        if (pc.remove()) {
+            connections.remove(pc);
+            totalCount.decrementAndGet();
+            pc.closeRawConnection();
+        }
+    }
+
+    /**
+     * 关闭空闲的连接，正在使用的连接在归还时关闭
+     */
+    public void close() {
+        closed = true;
+        for (PooledConnection pc : connections) {
+            if (pc.tryReserve()) {
+                discard(pc);
+            }
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 连接已经达到上限且全部在使用中，再借用就要等待
+     */
+    public boolean isSaturated() {
+        return totalCount.get() >= maxPoolSize && activeCount.get() >= totalCount.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getTotalConnections() {
+        return totalCount.get();
+    }
+
+    public int getActiveConnections() {
+        return activeCount.get();
+    }
+
+    public int getIdleConnections() {
+        return Math.max(0, totalCount.get() - activeCount.get());
+    }
+
+    public int getWaitingThreads() {
+        return waitingCount.get();
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize(int maxPoolSize) {
+        if (maxPoolSize <= 0) {
+            throw new IllegalArgumentException("maxPoolSize of " + name + " must be positive");
+        }
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    public long getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    /**
+     * 借用连接的最长等待时间，毫秒，默认3000
+     */
+    public void setConnectionTimeout(long connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    /**
+     * 连接空闲超过该时间(毫秒，默认500)才在借出前检查有效性
+     */
+    public void setValidationIdleTime(long validationIdleTime) {
+        this.validationIdleTime = validationIdleTime;
+    }
+
+    /**
+     * 有效性检查的超时时间，秒，默认3
+     */
+    public void setValidationTimeout(int validationTimeout) {
+        this.validationTimeout = validationTimeout;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        this.logWriter = out;
+    }
+
+    /**
+     * 新建物理连接的最长时间，秒，0(默认)表示只受connectionTimeout限制
+     */
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        this.loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return loginTimeout;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("not support getParentLogger()");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("pool " + name + " is not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool [name=" + name + ", url=" + url + ", maxPoolSize=" + maxPoolSize + ", total="
+                + totalCount.get() + ", active=" + activeCount.get() + ", waiting=" + waitingCount.get() + "]";
+    }
+
+}
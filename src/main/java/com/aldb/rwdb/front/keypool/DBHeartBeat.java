@@ -9,7 +9,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.log4j.Logger;
 
 /**
- * 心跳检测，暂时先不用
+ * 心跳检测，由DBHeartBeatManager定时调度。心跳使用自己独占的连接，不与应用的语句争用。
+ * 超时后在同一次心跳内立即重试，连续超时maxRetryCount次(连接异常时立即)将数据源在BackendPool中标记为不可用，
+ * 数据源仍然保留，恢复后重新标记为可用。重试不会超出心跳间隔，因此摘除最迟在一个间隔内完成
  * 
  * @author Administrator
  *
@@ -17,77 +19,172 @@ import org.apache.log4j.Logger;
 public class DBHeartBeat implements Runnable {
 
     private static Logger LOGGER = Logger.getLogger(DBHeartBeat.class);
-    private static final int MAX_RETRY_COUNT = 5;
+    public static final int DEFAULT_MAX_RETRY_COUNT = 3;
 
     private volatile boolean closed;
     private volatile Connection conn;
 
     private final int timeout;
+    private final int maxRetryCount;
+    private final String heartBeatSql;
+    private final ReplicationLagChecker lagChecker;
+    private volatile boolean trackGtid;
     private final PhysicalDatasource ds;
     private final String dataSourceName;
     private final AtomicBoolean fetching;
-    private int errorCount;
+    private final long retryWindow;
 
     public DBHeartBeat(PhysicalDatasource ds, String name, int timeout) {
+        this(ds, name, timeout, DEFAULT_MAX_RETRY_COUNT, "select 1", null, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param lagChecker
+     *            为null时不测量复制延迟
+     * @param retryWindow
+     *            一次心跳内超时重试的总时长上限，毫秒，一般为心跳间隔
+     */
+    public DBHeartBeat(PhysicalDatasource ds, String name, int timeout, int maxRetryCount, String heartBeatSql,
+            ReplicationLagChecker lagChecker, long retryWindow) {
         this.ds = ds;
         this.closed = true;
         this.timeout = timeout;
+        this.maxRetryCount = maxRetryCount;
+        this.retryWindow = retryWindow;
+        this.heartBeatSql = heartBeatSql;
+        this.lagChecker = lagChecker;
         this.dataSourceName = name;
         this.fetching = new AtomicBoolean(false);
     }
 
     @Override
     public void run() {
-        Connection newConn = null;
-        if (closed) {
-            try {
-                newConn = ds.getConnection();
-                trySendHeartBeat(newConn);
+        if (!fetching.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            for (int attempt = 1;; attempt++) {
+                try {
+                    beat();
+                    return;
+                } catch (SQLTimeoutException timee) {
+                    // 下一次重试可能超出心跳间隔时不再重试，避免摘除被推迟到下一个间隔
+                    if (attempt >= maxRetryCount
+                            || System.currentTimeMillis() - start + timeout * 1000L > retryWindow) {
+                        LOGGER.error("DataSource " + dataSourceName + " heart beat fail - timeout " + attempt
+                                + " times");
+                        onFailure();
+                        return;
+                    }
+                    LOGGER.warn("DataSource " + dataSourceName + " heart beat timeout, heart beat again");
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.error("DataSource " + dataSourceName + " heart beat fail - connction error", e);
+            closeConnection();
+            onFailure();
+        } catch (RuntimeException e) {
+            LOGGER.error("DataSource " + dataSourceName + " heart beat fail", e);
+            closeConnection();
+            onFailure();
+        } finally {
+            fetching.set(false);
+        }
+    }
 
-                conn = newConn;
-                errorCount = 0;
-                return;
-            } catch (SQLException e) {
-                closed = true;
-                LOGGER.error("DataSource " + dataSourceName + " create socket error - heart beat fail");
+    private void beat() throws SQLException {
+        if (closed) {
+            conn = ds.getDedicatedConnection();
+            closed = false;
+        }
+        trySendHeartBeat(conn);
+        onSuccess();
+        if (lagChecker != null) {
+            checkReplicationLag(conn);
+        }
+        if (trackGtid) {
+            fetchExecutedGtidSet(conn);
+        }
+    }
 
-                BackendPool.getInstance().removeDataSouce(dataSourceName);
-                return;
+    private void trySendHeartBeat(Connection beatConn) throws SQLException {
+        Statement st = beatConn.createStatement();
+        try {
+            st.setQueryTimeout(timeout);
+            if (!st.execute(heartBeatSql)) {
+                throw new SQLException("heart beat sql returns no result: " + heartBeatSql);
             }
+        } finally {
+            st.close();
         }
+    }
 
-        trySendHeartBeat(conn);
+    private void checkReplicationLag(Connection lagConn) {
+        long lag;
+        try {
+            lag = lagChecker.check(lagConn, timeout);
+        } catch (SQLException e) {
+            LOGGER.error("DataSource " + dataSourceName + " check replication lag error", e);
+            lag = ReplicationLagChecker.LAG_UNKNOWN;
+        }
+        if (lag > BackendPool.getInstance().getMaxReplicationLag() && LOGGER.isDebugEnabled()) {
+            LOGGER.debug("DataSource " + dataSourceName + " replication lag " + lag + "ms exceeds the limit");
+        }
+        BackendPool.getInstance().updateReplicationLag(ds, lag);
     }
 
-    
-    
-    private void trySendHeartBeat(Connection beatConn) {
-        if (fetching.compareAndSet(false, true)) {
-            try {
-                Statement st = beatConn.createStatement();
-                st.setQueryTimeout(timeout);
+    private void fetchExecutedGtidSet(Connection gtidConn) {
+        try {
+            ds.setExecutedGtidSet(GtidSet.fetchExecuted(gtidConn, timeout));
+        } catch (SQLException e) {
+            LOGGER.error("DataSource " + dataSourceName + " fetch gtid_executed error", e);
+            ds.setExecutedGtidSet(null);
+        }
+    }
 
-                if (!st.execute("select user()")) {
-                    LOGGER.error("DataSource " + dataSourceName + " heart beat fail - timeout");
-                    ++errorCount;
-                }
-                st.close();
-
-                closed = false;
-                BackendPool.getInstance().putDataSouce(dataSourceName, ds);
-            } catch (SQLTimeoutException timee) {
-                if (++errorCount < MAX_RETRY_COUNT) {
-                    LOGGER.error("DataSource " + dataSourceName + " send heartbeat error but enough, heart beat again");
-                } else {
-                    BackendPool.getInstance().removeDataSouce(dataSourceName);
-                }
+    /**
+     * 是否在心跳时刷新从库已执行的GTID集合
+     */
+    public void setTrackGtid(boolean trackGtid) {
+        this.trackGtid = trackGtid;
+    }
+
+    private void onSuccess() {
+        if (!BackendPool.getInstance().isAlive(dataSourceName)) {
+            LOGGER.info("DataSource " + dataSourceName + " heart beat recover, add it to backend pool");
+            BackendPool.getInstance().markUp(dataSourceName);
+        }
+    }
+
+    private void onFailure() {
+        if (BackendPool.getInstance().isAlive(dataSourceName)) {
+            LOGGER.error("DataSource " + dataSourceName + " is unavailable, remove it from backend pool");
+            BackendPool.getInstance().markDown(dataSourceName);
+        }
+    }
+
+    private void closeConnection() {
+        closed = true;
+        Connection c = conn;
+        conn = null;
+        if (c != null) {
+            try {
+                c.close();
             } catch (SQLException e) {
-                LOGGER.error("DataSource " + dataSourceName + " heart beat fail - connction error");
-                closed = true;
-                BackendPool.getInstance().removeDataSouce(dataSourceName);
-            } finally {
-                fetching.set(false);
+                LOGGER.warn("DataSource " + dataSourceName + " close heart beat connection error", e);
             }
         }
     }
+
+    /**
+     * 停止心跳时释放独占的连接
+     */
+    public void stop() {
+        closeConnection();
+    }
+
+    public String getDataSourceName() {
+        return dataSourceName;
+    }
 }
@@ -0,0 +1,115 @@
+package com.aldb.rwdb.front.keypool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.aldb.rwdb.util.Constant;
+
+/**
+ * 按固定间隔对每个读库执行心跳，驱动BackendPool中读库存活标记的变化。
+ * 主库不参与摘除，因为读写库不对等，主库不可用时无法切换
+ * 
+ */
+public class DBHeartBeatManager {
+
+    private static Logger LOGGER = Logger.getLogger(DBHeartBeatManager.class);
+
+    private final long period;
+    private final int timeout;
+    private final int maxRetryCount;
+    private final String heartBeatSql;
+    private ReplicationLagChecker lagChecker;
+    private boolean trackGtid;
+
+    private ScheduledExecutorService executor;
+    private final List<DBHeartBeat> heartBeats = new ArrayList<DBHeartBeat>();
+
+    /**
+     * @param period
+     *            心跳间隔，毫秒
+     * @param timeout
+     *            心跳语句超时时间，秒
+     * @param maxRetryCount
+     *            连续超时多少次后摘除，重试在同一个心跳间隔内完成
+     * @param heartBeatSql
+     */
+    public DBHeartBeatManager(long period, int timeout, int maxRetryCount, String heartBeatSql) {
+        this.period = period;
+        this.timeout = timeout;
+        this.maxRetryCount = maxRetryCount;
+        this.heartBeatSql = heartBeatSql;
+    }
+
+    /**
+     * 设置后每次心跳成功都会测量从库的复制延迟
+     */
+    public void setLagChecker(ReplicationLagChecker lagChecker) {
+        this.lagChecker = lagChecker;
+    }
+
+    /**
+     * 设置后每次心跳成功都会刷新从库已执行的GTID集合，启动后设置同样对正在运行的心跳生效
+     */
+    public synchronized void setTrackGtid(boolean trackGtid) {
+        this.trackGtid = trackGtid;
+        for (DBHeartBeat heartBeat : heartBeats) {
+            heartBeat.setTrackGtid(trackGtid);
+        }
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        for (Map.Entry<String, PhysicalDatasource> entry : BackendPool.getInstance().getDbMap().entrySet()) {
+            if (entry.getKey().startsWith(Constant.RW.READ.name())) {
+                DBHeartBeat heartBeat = new DBHeartBeat(entry.getValue(), entry.getKey(), timeout, maxRetryCount,
+                        heartBeatSql, lagChecker, period);
+                heartBeat.setTrackGtid(trackGtid);
+                heartBeats.add(heartBeat);
+            }
+        }
+        if (heartBeats.isEmpty()) {
+            return;
+        }
+        executor = Executors.newScheduledThreadPool(Math.min(heartBeats.size(), 4), new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "rwdb-heartbeat-" + index.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        for (DBHeartBeat heartBeat : heartBeats) {
+            executor.scheduleWithFixedDelay(heartBeat, 0, period, TimeUnit.MILLISECONDS);
+        }
+        LOGGER.info("start heart beat for " + heartBeats.size() + " read data sources, period=" + period + "ms");
+    }
+
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(timeout, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (DBHeartBeat heartBeat : heartBeats) {
+            heartBeat.stop();
+        }
+        heartBeats.clear();
+        executor = null;
+    }
+}
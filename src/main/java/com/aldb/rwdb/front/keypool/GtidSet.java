@@ -0,0 +1,162 @@
+package com.aldb.rwdb.front.keypool;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * mysql的GTID集合，格式为uuid:1-5:7,uuid2:1-3，只用于判断一个从库是否已经执行了另一个集合中的全部事务
+ * 
+ */
+public final class GtidSet {
+
+    public static final GtidSet EMPTY = new GtidSet(Collections.<String, long[]> emptyMap());
+
+    // uuid(或uuid:tag) -> 排好序且已合并的区间，依次为start,end,start,end...
+    private final Map<String, long[]> intervals;
+
+    private GtidSet(Map<String, long[]> intervals) {
+        this.intervals = intervals;
+    }
+
+    public static GtidSet parse(String gtidSet) {
+        if (gtidSet == null || gtidSet.trim().length() == 0) {
+            return EMPTY;
+        }
+        Map<String, List<long[]>> ranges = new HashMap<String, List<long[]>>();
+        for (String item : gtidSet.split(",")) {
+            String[] parts = item.trim().split(":");
+            if (parts.length < 2) {
+                throw new IllegalArgumentException("invalid gtid set " + gtidSet);
+            }
+            String sid = parts[0].toLowerCase();
+            for (int i = 1; i < parts.length; i++) {
+                String part = parts[i].trim();
+                if (part.length() == 0) {
+                    continue;
+                }
+                if (!Character.isDigit(part.charAt(0))) {
+                    // mysql 8.3之后的tag
+                    sid = parts[0].toLowerCase() + ":" + part;
+                    continue;
+                }
+                int dash = part.indexOf('-');
+                long start = Long.parseLong(dash < 0 ? part : part.substring(0, dash));
+                long end = dash < 0 ? start : Long.parseLong(part.substring(dash + 1));
+                List<long[]> list = ranges.get(sid);
+                if (list == null) {
+                    list = new ArrayList<long[]>();
+                    ranges.put(sid, list);
+                }
+                list.add(new long[] { start, end });
+            }
+        }
+        Map<String, long[]> merged = new HashMap<String, long[]>();
+        for (Map.Entry<String, List<long[]>> entry : ranges.entrySet()) {
+            merged.put(entry.getKey(), merge(entry.getValue()));
+        }
+        return new GtidSet(merged);
+    }
+
+    private static long[] merge(List<long[]> list) {
+        long[][] sorted = list.toArray(new long[list.size()][]);
+        Arrays.sort(sorted, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] o1, long[] o2) {
+                return o1[0] < o2[0] ? -1 : (o1[0] == o2[0] ? 0 : 1);
+            }
+        });
+        long[] result = new long[sorted.length * 2];
+        int size = 0;
+        for (long[] range : sorted) {
+            if (size > 0 && range[0] <= result[size - 1] + 1) {
+                result[size - 1] = Math.max(result[size - 1], range[1]);
+            } else {
+                result[size++] = range[0];
+                result[size++] = range[1];
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * 本集合是否包含other中的全部事务
+     */
+    public boolean contains(GtidSet other) {
+        if (other == this) {
+            return true;
+        }
+        for (Map.Entry<String, long[]> entry : other.intervals.entrySet()) {
+            long[] mine = intervals.get(entry.getKey());
+            long[] theirs = entry.getValue();
+            for (int i = 0; i < theirs.length; i += 2) {
+                if (mine == null || !covers(mine, theirs[i], theirs[i + 1])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean covers(long[] ranges, long start, long end) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] <= start) {
+                if (end <= ranges[i + 1]) {
+                    return true;
+                }
+            } else {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return intervals.isEmpty();
+    }
+
+    /**
+     * 读取数据库已经执行的GTID集合
+     */
+    public static GtidSet fetchExecuted(Connection conn, int timeout) throws SQLException {
+        Statement st = conn.createStatement();
+        ResultSet rs = null;
+        try {
+            st.setQueryTimeout(timeout);
+            rs = st.executeQuery("SELECT @@GLOBAL.gtid_executed");
+            return rs.next() ? parse(rs.getString(1)) : EMPTY;
+        } finally {
+            if (rs != null) {
+                rs.close();
+            }
+            st.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, long[]> entry : intervals.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(entry.getKey());
+            long[] ranges = entry.getValue();
+            for (int i = 0; i < ranges.length; i += 2) {
+                sb.append(':').append(ranges[i]);
+                if (ranges[i + 1] != ranges[i]) {
+                    sb.append('-').append(ranges[i + 1]);
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,8 @@
+package com.aldb.rwdb.front.keypool;
+
+/**
+ * 按语句执行耗时选择读库的负载均衡策略，使用这类策略时才在每条语句执行后更新PhysicalDatasource的耗时估计
+ * 
+ */
+public interface LatencyAwareLoadBalance extends LoadBalanceStrategy {
+}
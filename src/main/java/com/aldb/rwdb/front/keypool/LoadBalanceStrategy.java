@@ -0,0 +1,18 @@
+package com.aldb.rwdb.front.keypool;
+
+import java.util.Random;
+
+/**
+ * 从多个存活的读库中选出一个来执行语句，实现必须是无锁且线程安全的
+ * 
+ */
+public interface LoadBalanceStrategy {
+
+    /**
+     * @param dataSources
+     *            存活的读库，至少有两个元素，调用方不能修改
+     * @param random
+     *            当前线程的随机数
+     */
+    PhysicalDatasource select(PhysicalDatasource[] dataSources, Random random);
+}
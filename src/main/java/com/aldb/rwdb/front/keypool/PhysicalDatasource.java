@@ -2,18 +2,57 @@ package com.aldb.rwdb.front.keypool;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
+import com.aldb.rwdb.front.monitor.ProxyMetrics;
+
 public class PhysicalDatasource {
 
     private DataSource dataSource;
 
     private String name;
 
+    private volatile int weight = 1;
+
+    // 正在该库上执行的语句数，用于最少活跃数之类的负载均衡
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    // 语句执行耗时的衰减时间常数，超过它没有新样本时旧的耗时影响降到1/e
+    private static final double LATENCY_DECAY_NANOS = 10000000000.0;
+
+    // 失败的语句按当前耗时估计的倍数计，且不低于FAILURE_MIN_PENALTY_NANOS，快速失败的库不会因此显得更快
+    private static final double FAILURE_PENALTY_FACTOR = 5;
+    private static final double FAILURE_MIN_PENALTY_NANOS = 10000000.0;
+
+    // 语句执行耗时(纳秒)的peak-EWMA:比当前值慢的样本直接取代，快的样本按距上次的时间衰减融合。
+    // 以double的位存放，CAS更新
+    private final AtomicLong latencyEwmaBits = new AtomicLong(Double.doubleToRawLongBits(0));
+    private volatile long latencyStamp = System.nanoTime();
+
+    // 心跳是否认为该库可用，不可用的读库仍然保留在BackendPool中，只是不参与选择
+    private volatile boolean alive = true;
+
+    // 复制延迟的毫秒数，-1表示还没有测量过
+    private volatile long replicationLag = -1;
+
+    // 从库已经执行的GTID集合，由心跳定期刷新，读时不满足再按需刷新，用于读己之写
+    private volatile GtidSet executedGtidSet;
+    private volatile long gtidFetchTime;
+    private final AtomicBoolean gtidFetching = new AtomicBoolean();
+
+    // 按需读取gtid_executed的超时时间，秒
+    private static final int GTID_FETCH_TIMEOUT = 1;
+
+    private final CircuitBreaker circuitBreaker;
+
     public PhysicalDatasource(String pyhsicalName, DataSource dataSource) {
         this.name = pyhsicalName;
         this.dataSource = dataSource;
+        this.circuitBreaker = new CircuitBreaker(pyhsicalName, BackendPool.getInstance().getCircuitBreakerConfig());
     }
 
     public String getName() {
@@ -21,7 +60,181 @@ public class PhysicalDatasource {
     }
 
     public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection conn = dataSource.getConnection();
+        ProxyMetrics.getInstance().recordBackend(name, ProxyMetrics.Phase.ACQUIRE, System.nanoTime() - start);
+        return conn;
+    }
+
+    /**
+     * 心跳等需要独占的连接，使用内置连接池时不占用池中的连接
+     */
+    public Connection getDedicatedConnection() throws SQLException {
+        if (dataSource instanceof ConnectionPool) {
+            return ((ConnectionPool) dataSource).createRawConnection();
+        }
         return dataSource.getConnection();
     }
 
+    /**
+     * 使用内置连接池时返回该连接池，否则返回null
+     */
+    public ConnectionPool getConnectionPool() {
+        return dataSource instanceof ConnectionPool ? (ConnectionPool) dataSource : null;
+    }
+
+    /**
+     * 内置连接池的连接已经全部借出，外部传入的DataSource无法得知，总是返回false
+     */
+    public boolean isSaturated() {
+        return dataSource instanceof ConnectionPool && ((ConnectionPool) dataSource).isSaturated();
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight of " + name + " can't be negative");
+        }
+        this.weight = weight;
+    }
+
+    public void beginRequest() {
+        activeCount.incrementAndGet();
+    }
+
+    public void endRequest() {
+        activeCount.decrementAndGet();
+    }
+
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * 记录一条语句在该库上的执行耗时，无锁，并发更新时时间戳可能略有偏差，不影响估计
+     */
+    public void recordLatency(double nanos) {
+        long now = System.nanoTime();
+        double w = Math.exp(-Math.max(now - latencyStamp, 0) / LATENCY_DECAY_NANOS);
+        long bits;
+        double updated;
+        do {
+            bits = latencyEwmaBits.get();
+            double ewma = Double.longBitsToDouble(bits);
+            updated = nanos > ewma ? nanos : ewma * w + nanos * (1 - w);
+        } while (!latencyEwmaBits.compareAndSet(bits, Double.doubleToRawLongBits(updated)));
+        latencyStamp = now;
+    }
+
+    /**
+     * 失败按惩罚耗时计入估计
+     */
+    private void recordFailureLatency(long nanos) {
+        double ewma = Double.longBitsToDouble(latencyEwmaBits.get());
+        recordLatency(Math.max(nanos, Math.max(ewma * FAILURE_PENALTY_FACTOR, FAILURE_MIN_PENALTY_NANOS)));
+    }
+
+    /**
+     * 记录一条语句的执行结果，负载均衡策略需要时更新耗时估计，并计入熔断器
+     * 
+     * @param error
+     *            执行成功时为null
+     */
+    public void recordResult(long nanos, SQLException error) {
+        if (BackendPool.getInstance().isLatencyTracking()) {
+            if (error == null) {
+                recordLatency(nanos);
+            } else {
+                recordFailureLatency(nanos);
+            }
+        }
+        if (circuitBreaker.record(nanos, error)) {
+            BackendPool.getInstance().onCircuitBreakerChanged();
+        }
+    }
+
+    /**
+     * 获取或初始化物理连接失败，计入熔断器和耗时估计
+     */
+    public void recordFailure(SQLException error) {
+        if (BackendPool.getInstance().isLatencyTracking()) {
+            recordFailureLatency(0);
+        }
+        if (circuitBreaker.record(0, error)) {
+            BackendPool.getInstance().onCircuitBreakerChanged();
+        }
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * 当前的耗时估计，纳秒；长时间没有样本时向0衰减，使被冷落的库重新有机会被选中。读取不加锁
+     */
+    public double getLatencyEwma() {
+        double ewma = Double.longBitsToDouble(latencyEwmaBits.get());
+        if (ewma == 0) {
+            return 0;
+        }
+        return ewma * Math.exp(-Math.max(System.nanoTime() - latencyStamp, 0) / LATENCY_DECAY_NANOS);
+    }
+
+    public boolean isAlive() {
+        return alive;
+    }
+
+    void setAlive(boolean alive) {
+        this.alive = alive;
+    }
+
+    public long getReplicationLag() {
+        return replicationLag;
+    }
+
+    void setReplicationLag(long replicationLag) {
+        this.replicationLag = replicationLag;
+    }
+
+    public GtidSet getExecutedGtidSet() {
+        return executedGtidSet;
+    }
+
+    void setExecutedGtidSet(GtidSet executedGtidSet) {
+        this.executedGtidSet = executedGtidSet;
+        this.gtidFetchTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 已知的GTID集合早于maxAge毫秒时从池中借一个连接重新读取，同一时刻只有一个线程读取，其它线程直接使用已知的集合
+     */
+    GtidSet refreshExecutedGtidSet(long maxAge) throws SQLException {
+        if (System.currentTimeMillis() - gtidFetchTime < maxAge || !gtidFetching.compareAndSet(false, true)) {
+            return executedGtidSet;
+        }
+        try {
+            Connection conn = getConnection();
+            try {
+                setExecutedGtidSet(GtidSet.fetchExecuted(conn, GTID_FETCH_TIMEOUT));
+            } finally {
+                conn.close();
+            }
+        } finally {
+            // 读取失败时同样推迟下一次，库不可用时不会每次读都去尝试
+            gtidFetchTime = System.currentTimeMillis();
+            gtidFetching.set(false);
+        }
+        return executedGtidSet;
+    }
+
+    @Override
+    public String toString() {
+        return "PhysicalDatasource [name=" + name + ", alive=" + alive + ", weight=" + weight + ", activeCount=" + activeCount
+                + ", replicationLag=" + replicationLag + ", latencyEwma=" + (long) getLatencyEwma()
+                + ", circuitBreaker=" + circuitBreaker.getState() + "]";
+    }
+
 }
@@ -0,0 +1,172 @@
+package com.aldb.rwdb.front.keypool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * ConnectionPool中的一个物理连接，借用状态用CAS切换。每次借出时生成一个新的代理，代理close时归还，
+ * 同一个代理多次close或归还后继续使用都不会影响下一个借用者
+ *
+ */
+class PooledConnection {
+
+    private static org.slf4j.Logger log = LoggerFactory.getLogger(PooledConnection.class);
+
+    private static final int STATE_NOT_IN_USE = 0;
+    private static final int STATE_IN_USE = 1;
+    private static final int STATE_REMOVED = -1;
+
+    private final ConnectionPool pool;
+    private final Connection rawConnection;
+    private final AtomicInteger state = new AtomicInteger(STATE_NOT_IN_USE);
+    private volatile long lastAccess;
+
+    // 创建时的连接属性，使用者修改过的在归还时恢复
+    private final boolean defaultReadOnly;
+    private final int defaultTransactionIsolation;
+    private final String defaultCatalog;
+    private boolean dirty;
+
+    // 执行中出现连接级别的错误(SQLState 08开头)，归还时直接关闭
+    private volatile boolean broken;
+
+    PooledConnection(ConnectionPool pool, Connection rawConnection) throws SQLException {
+        this.pool = pool;
+        this.rawConnection = rawConnection;
+        this.defaultReadOnly = rawConnection.isReadOnly();
+        this.defaultTransactionIsolation = rawConnection.getTransactionIsolation();
+        this.defaultCatalog = rawConnection.getCatalog();
+        this.lastAccess = System.currentTimeMillis();
+    }
+
+    boolean tryReserve() {
+        return state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE);
+    }
+
+    void free() {
+        lastAccess = System.currentTimeMillis();
+        state.set(STATE_NOT_IN_USE);
+    }
+
+    boolean remove() {
+        for (;;) {
+            int s = state.get();
+            if (s == STATE_REMOVED) {
+                return false;
+            }
+            if (state.compareAndSet(s, STATE_REMOVED)) {
+                return true;
+            }
+        }
+    }
+
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    Connection getRawConnection() {
+        return rawConnection;
+    }
+
+    Connection open() {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new Handler());
+    }
+
+    /**
+     * 归还前回滚未提交的事务并恢复连接属性，失败返回false，由连接池关闭该连接
+     */
+    boolean reset() {
+        try {
+            if (!rawConnection.getAutoCommit()) {
+                rawConnection.rollback();
+                rawConnection.setAutoCommit(true);
+            }
+            if (dirty) {
+                if (rawConnection.isReadOnly() != defaultReadOnly) {
+                    rawConnection.setReadOnly(defaultReadOnly);
+                }
+                if (rawConnection.getTransactionIsolation() != defaultTransactionIsolation) {
+                    rawConnection.setTransactionIsolation(defaultTransactionIsolation);
+                }
+                if (defaultCatalog != null && !defaultCatalog.equals(rawConnection.getCatalog())) {
+                    rawConnection.setCatalog(defaultCatalog);
+                }
+                dirty = false;
+            }
+            rawConnection.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            log.warn("pool " + pool.getName() + " reset connection error", e);
+            return false;
+        }
+    }
+
+    void closeRawConnection() {
+        try {
+            rawConnection.close();
+        } catch (SQLException e) {
+            log.warn("pool " + pool.getName() + " close connection error", e);
+        }
+    }
+
+    private class Handler implements InvocationHandler {
+
+        private boolean closed;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            if ("close".equals(methodName)) {
+                if (!closed) {
+                    closed = true;
+                    pool.release(PooledConnection.this);
+                }
+                return null;
+            }
+            if ("isClosed".equals(methodName)) {
+                return closed || rawConnection.isClosed();
+            }
+            if ("equals".equals(methodName)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(methodName)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(methodName)) {
+                return "PooledConnection[" + pool.getName() + "]" + rawConnection;
+            }
+            if (closed) {
+                throw new SQLException("connection is closed");
+            }
+            if ("setReadOnly".equals(methodName) || "setTransactionIsolation".equals(methodName)
+                    || "setCatalog".equals(methodName)) {
+                dirty = true;
+            }
+            try {
+                return method.invoke(rawConnection, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    String sqlState = ((SQLException) cause).getSQLState();
+                    if (sqlState != null && sqlState.startsWith("08")) {
+                        broken = true;
+                    }
+                }
+                throw cause;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.aldb.rwdb.front.keypool;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+/**
+ * 在心跳连接上测量从库的复制延迟。默认使用SHOW SLAVE STATUS的Seconds_Behind_Master，
+ * 也可以配置一个查询心跳表的sql(如pt-heartbeat)，第一列返回时间戳时延迟为当前时间减去该时间戳，
+ * 返回数值时作为延迟的秒数
+ * 
+ */
+public class ReplicationLagChecker {
+
+    /** 复制中断或无法得到延迟 */
+    public static final long LAG_UNKNOWN = Long.MAX_VALUE;
+
+    private static final String SHOW_SLAVE_STATUS = "SHOW SLAVE STATUS";
+
+    private final String lagSql;
+
+    public ReplicationLagChecker(String lagSql) {
+        this.lagSql = lagSql;
+    }
+
+    /**
+     * @return 延迟的毫秒数，不能确定时返回LAG_UNKNOWN
+     */
+    public long check(Connection conn, int timeout) throws SQLException {
+        Statement st = conn.createStatement();
+        ResultSet rs = null;
+        try {
+            st.setQueryTimeout(timeout);
+            if (lagSql == null) {
+                rs = st.executeQuery(SHOW_SLAVE_STATUS);
+                if (!rs.next()) {
+                    return LAG_UNKNOWN;
+                }
+                long seconds = rs.getLong("Seconds_Behind_Master");
+                return rs.wasNull() ? LAG_UNKNOWN : seconds * 1000;
+            }
+            rs = st.executeQuery(lagSql);
+            if (!rs.next()) {
+                return LAG_UNKNOWN;
+            }
+            Object value = rs.getObject(1);
+            if (value instanceof Timestamp) {
+                return Math.max(0, System.currentTimeMillis() - ((Timestamp) value).getTime());
+            } else if (value instanceof Number) {
+                return (long) (((Number) value).doubleValue() * 1000);
+            }
+            return LAG_UNKNOWN;
+        } finally {
+            if (rs != null) {
+                rs.close();
+            }
+            st.close();
+        }
+    }
+}
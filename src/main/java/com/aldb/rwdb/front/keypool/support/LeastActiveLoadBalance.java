@@ -0,0 +1,30 @@
+package com.aldb.rwdb.front.keypool.support;
+
+import java.util.Random;
+
+import com.aldb.rwdb.front.keypool.LoadBalanceStrategy;
+import com.aldb.rwdb.front.keypool.PhysicalDatasource;
+
+/**
+ * 选择正在执行语句最少的库，从随机位置开始扫描，活跃数相同时不会总是压到第一个库上
+ * 
+ */
+public class LeastActiveLoadBalance implements LoadBalanceStrategy {
+
+    @Override
+    public PhysicalDatasource select(PhysicalDatasource[] dataSources, Random random) {
+        int length = dataSources.length;
+        int start = random.nextInt(length);
+        PhysicalDatasource best = null;
+        int leastActive = Integer.MAX_VALUE;
+        for (int i = 0; i < length; i++) {
+            PhysicalDatasource ds = dataSources[(start + i) % length];
+            int active = ds.getActiveCount();
+            if (active < leastActive) {
+                leastActive = active;
+                best = ds;
+            }
+        }
+        return best;
+    }
+}
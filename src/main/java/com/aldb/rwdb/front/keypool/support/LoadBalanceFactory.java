@@ -0,0 +1,30 @@
+package com.aldb.rwdb.front.keypool.support;
+
+import com.aldb.rwdb.front.keypool.LoadBalanceStrategy;
+
+public class LoadBalanceFactory {
+
+    public static final String ROUND_ROBIN = "roundRobin";
+    public static final String WEIGHTED = "weighted";
+    public static final String LEAST_ACTIVE = "leastActive";
+    public static final String POWER_OF_TWO = "p2c";
+    public static final String PEAK_EWMA = "peakEwma";
+
+    private LoadBalanceFactory() {
+    }
+
+    public static LoadBalanceStrategy create(String name) {
+        if (name == null || ROUND_ROBIN.equalsIgnoreCase(name)) {
+            return new RoundRobinLoadBalance();
+        } else if (WEIGHTED.equalsIgnoreCase(name)) {
+            return new WeightedLoadBalance();
+        } else if (LEAST_ACTIVE.equalsIgnoreCase(name)) {
+            return new LeastActiveLoadBalance();
+        } else if (POWER_OF_TWO.equalsIgnoreCase(name)) {
+            return new PowerOfTwoChoicesLoadBalance();
+        } else if (PEAK_EWMA.equalsIgnoreCase(name)) {
+            return new PeakEwmaLoadBalance();
+        }
+        throw new IllegalArgumentException("unknown load balance " + name);
+    }
+}
@@ -0,0 +1,79 @@
+package com.aldb.rwdb.front.keypool.support;
+
+import java.util.Random;
+
+import com.aldb.rwdb.front.keypool.LatencyAwareLoadBalance;
+import com.aldb.rwdb.front.keypool.PhysicalDatasource;
+
+/**
+ * peak-EWMA:按语句执行耗时的peak-EWMA乘以(活跃数+1)估计每个库的代价，选择代价最小的库，
+ * 变慢的库立即被避开；另有一小部分请求随机发往其它库探测，使它们的耗时估计保持新鲜。
+ * 还没有样本的库按penaltyLatency估计，长时间空闲后衰减的估计不低于MIN_LATENCY_NANOS，
+ * 这样的库不会因为代价接近0而吸走全部的读，活跃数仍然起作用
+ * 
+ */
+public class PeakEwmaLoadBalance implements LatencyAwareLoadBalance {
+
+    public static final double DEFAULT_PROBE_RATIO = 0.05;
+
+    public static final double DEFAULT_PENALTY_LATENCY_NANOS = 10000000.0;
+
+    // 衰减后的耗时估计的下限，约为一次网络往返
+    private static final double MIN_LATENCY_NANOS = 100000.0;
+
+    private final double probeRatio;
+    private final double penaltyLatency;
+
+    public PeakEwmaLoadBalance() {
+        this(DEFAULT_PROBE_RATIO);
+    }
+
+    /**
+     * @param probeRatio
+     *            随机探测的请求比例，0到1之间
+     */
+    public PeakEwmaLoadBalance(double probeRatio) {
+        this(probeRatio, DEFAULT_PENALTY_LATENCY_NANOS);
+    }
+
+    /**
+     * @param penaltyLatency
+     *            还没有样本的库的耗时估计，纳秒
+     */
+    public PeakEwmaLoadBalance(double probeRatio, double penaltyLatency) {
+        if (probeRatio < 0 || probeRatio > 1) {
+            throw new IllegalArgumentException("probeRatio must be between 0 and 1");
+        }
+        if (penaltyLatency <= 0) {
+            throw new IllegalArgumentException("penaltyLatency must be positive");
+        }
+        this.probeRatio = probeRatio;
+        this.penaltyLatency = penaltyLatency;
+    }
+
+    @Override
+    public PhysicalDatasource select(PhysicalDatasource[] dataSources, Random random) {
+        int length = dataSources.length;
+        if (probeRatio > 0 && random.nextDouble() < probeRatio) {
+            return dataSources[random.nextInt(length)];
+        }
+        // 从随机位置开始扫描，代价相同(如都还没有样本)时不会总是压到第一个库上
+        int start = random.nextInt(length);
+        PhysicalDatasource best = null;
+        double leastCost = Double.MAX_VALUE;
+        for (int i = 0; i < length; i++) {
+            PhysicalDatasource ds = dataSources[(start + i) % length];
+            double cost = estimateLatency(ds) * (ds.getActiveCount() + 1);
+            if (cost < leastCost) {
+                leastCost = cost;
+                best = ds;
+            }
+        }
+        return best;
+    }
+
+    private double estimateLatency(PhysicalDatasource ds) {
+        double latency = ds.getLatencyEwma();
+        return latency > 0 ? Math.max(latency, MIN_LATENCY_NANOS) : penaltyLatency;
+    }
+}
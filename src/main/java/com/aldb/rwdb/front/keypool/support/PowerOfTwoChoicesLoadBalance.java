@@ -0,0 +1,26 @@
+package com.aldb.rwdb.front.keypool.support;
+
+import java.util.Random;
+
+import com.aldb.rwdb.front.keypool.LoadBalanceStrategy;
+import com.aldb.rwdb.front.keypool.PhysicalDatasource;
+
+/**
+ * 随机取两个库，选择其中活跃数较少的那个
+ * 
+ */
+public class PowerOfTwoChoicesLoadBalance implements LoadBalanceStrategy {
+
+    @Override
+    public PhysicalDatasource select(PhysicalDatasource[] dataSources, Random random) {
+        int length = dataSources.length;
+        int first = random.nextInt(length);
+        int second = random.nextInt(length - 1);
+        if (second >= first) {
+            second++;
+        }
+        PhysicalDatasource a = dataSources[first];
+        PhysicalDatasource b = dataSources[second];
+        return a.getActiveCount() <= b.getActiveCount() ? a : b;
+    }
+}
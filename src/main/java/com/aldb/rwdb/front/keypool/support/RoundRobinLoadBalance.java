@@ -0,0 +1,22 @@
+package com.aldb.rwdb.front.keypool.support;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.aldb.rwdb.front.keypool.LoadBalanceStrategy;
+import com.aldb.rwdb.front.keypool.PhysicalDatasource;
+
+/**
+ * 轮询
+ * 
+ */
+public class RoundRobinLoadBalance implements LoadBalanceStrategy {
+
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    @Override
+    public PhysicalDatasource select(PhysicalDatasource[] dataSources, Random random) {
+        int index = (sequence.getAndIncrement() & Integer.MAX_VALUE) % dataSources.length;
+        return dataSources[index];
+    }
+}
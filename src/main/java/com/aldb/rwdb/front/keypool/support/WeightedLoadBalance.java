@@ -0,0 +1,32 @@
+package com.aldb.rwdb.front.keypool.support;
+
+import java.util.Random;
+
+import com.aldb.rwdb.front.keypool.LoadBalanceStrategy;
+import com.aldb.rwdb.front.keypool.PhysicalDatasource;
+
+/**
+ * 按权重随机，权重为0的库不参与选择，全部为0时退化为随机
+ * 
+ */
+public class WeightedLoadBalance implements LoadBalanceStrategy {
+
+    @Override
+    public PhysicalDatasource select(PhysicalDatasource[] dataSources, Random random) {
+        int totalWeight = 0;
+        for (PhysicalDatasource ds : dataSources) {
+            totalWeight += ds.getWeight();
+        }
+        if (totalWeight <= 0) {
+            return dataSources[random.nextInt(dataSources.length)];
+        }
+        int offset = random.nextInt(totalWeight);
+        for (PhysicalDatasource ds : dataSources) {
+            offset -= ds.getWeight();
+            if (offset < 0) {
+                return ds;
+            }
+        }
+        return dataSources[dataSources.length - 1];
+    }
+}
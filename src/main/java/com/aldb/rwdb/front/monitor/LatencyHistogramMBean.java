@@ -0,0 +1,23 @@
+package com.aldb.rwdb.front.monitor;
+
+/**
+ * 延迟直方图的JMX接口，时间单位均为微秒
+ *
+ */
+public interface LatencyHistogramMBean {
+
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+
+}
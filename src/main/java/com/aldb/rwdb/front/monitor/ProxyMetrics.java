@@ -0,0 +1,168 @@
+package com.aldb.rwdb.front.monitor;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 代理各阶段的耗时统计:路由按路由结果(WRITE/READ)统计，获取物理连接、初始化物理连接和语句执行按物理库统计。
+ * 调用registerMBeans()后以JMX MBean发布，ObjectName为
+ * com.aldb.rwdb:type=RouteLatency,decision=READ 和 com.aldb.rwdb:type=BackendLatency,backend=READ-0,phase=EXECUTE
+ *
+ */
+public class ProxyMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(ProxyMetrics.class);
+
+    private static final String DOMAIN = "com.aldb.rwdb";
+
+    public enum Phase {
+        ACQUIRE, // 从物理库获取连接
+        INIT_CONNECTION, // 把RWConnection上的设置应用到物理连接
+        EXECUTE // 语句在物理库上执行
+    }
+
+    private static ProxyMetrics instance = new ProxyMetrics();
+
+    public static ProxyMetrics getInstance() {
+        return instance;
+    }
+
+    private volatile boolean enabled = true;
+    private volatile boolean registered;
+
+    private final ConcurrentHashMap<String, LatencyHistogram> routeHistograms = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentHashMap<String, LatencyHistogram[]> backendHistograms = new ConcurrentHashMap<String, LatencyHistogram[]>();
+
+    private ProxyMetrics() {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void recordRoute(String decision, long nanos) {
+        if (enabled) {
+            getRouteHistogram(decision).record(nanos);
+        }
+    }
+
+    public void recordBackend(String backend, Phase phase, long nanos) {
+        if (enabled) {
+            getBackendHistograms(backend)[phase.ordinal()].record(nanos);
+        }
+    }
+
+    public LatencyHistogram getRouteHistogram(String decision) {
+        LatencyHistogram histogram = routeHistograms.get(decision);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = routeHistograms.putIfAbsent(decision, created);
+            if (histogram == null) {
+                histogram = created;
+                if (registered) {
+                    register(routeObjectName(decision), created);
+                }
+            }
+        }
+        return histogram;
+    }
+
+    public LatencyHistogram getBackendHistogram(String backend, Phase phase) {
+        return getBackendHistograms(backend)[phase.ordinal()];
+    }
+
+    private LatencyHistogram[] getBackendHistograms(String backend) {
+        LatencyHistogram[] histograms = backendHistograms.get(backend);
+        if (histograms == null) {
+            LatencyHistogram[] created = new LatencyHistogram[Phase.values().length];
+            for (int i = 0; i < created.length; i++) {
+                created[i] = new LatencyHistogram();
+            }
+            histograms = backendHistograms.putIfAbsent(backend, created);
+            if (histograms == null) {
+                histograms = created;
+                if (registered) {
+                    registerBackend(backend, created);
+                }
+            }
+        }
+        return histograms;
+    }
+
+    /**
+     * 发布到platform MBeanServer，之后新出现的路由结果或物理库也会自动发布
+     */
+    public synchronized void registerMBeans() {
+        if (registered) {
+            return;
+        }
+        registered = true;
+        for (Map.Entry<String, LatencyHistogram> entry : routeHistograms.entrySet()) {
+            register(routeObjectName(entry.getKey()), entry.getValue());
+        }
+        for (Map.Entry<String, LatencyHistogram[]> entry : backendHistograms.entrySet()) {
+            registerBackend(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public synchronized void unregisterMBeans() {
+        if (!registered) {
+            return;
+        }
+        registered = false;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (ObjectName name : server.queryNames(new ObjectName(DOMAIN + ":*"), null)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            log.warn("unregister rwdb mbeans error", e);
+        }
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : routeHistograms.values()) {
+            histogram.reset();
+        }
+        for (LatencyHistogram[] histograms : backendHistograms.values()) {
+            for (LatencyHistogram histogram : histograms) {
+                histogram.reset();
+            }
+        }
+    }
+
+    private void registerBackend(String backend, LatencyHistogram[] histograms) {
+        for (Phase phase : Phase.values()) {
+            register(DOMAIN + ":type=BackendLatency,backend=" + ObjectName.quote(backend) + ",phase=" + phase.name(),
+                    histograms[phase.ordinal()]);
+        }
+    }
+
+    private static String routeObjectName(String decision) {
+        return DOMAIN + ":type=RouteLatency,decision=" + ObjectName.quote(decision);
+    }
+
+    private static void register(String name, Object mbean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(mbean, objectName);
+            }
+        } catch (Exception e) {
+            log.warn("register mbean " + name + " error", e);
+        }
+    }
+
+}
@@ -0,0 +1,220 @@
+package com.aldb.rwdb.front.monitor;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aldb.rwdb.front.keypool.PhysicalDatasource;
+import com.aldb.rwdb.front.route.RouteResult;
+
+/**
+ * 路由审计日志，代替路由时逐条打印完整sql的INFO日志。
+ *
+ * 执行语句的线程按采样率把(模板、路由结果、物理库、执行耗时)写入预先分配好的环形缓冲区，只做数组赋值，不拼接字符串；
+ * 后台线程定期取出并写到名为rwdb.route.audit的logger，每个sql模板第一次出现时额外输出一次模板文本。
+ * 缓冲区满时丢弃新记录并计数，不阻塞执行线程
+ *
+ */
+public class RouteAuditLog {
+
+    private static final Logger log = LoggerFactory.getLogger(RouteAuditLog.class);
+    private static final Logger auditLog = LoggerFactory.getLogger("rwdb.route.audit");
+
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private static final long DRAIN_INTERVAL = 200; // 后台线程没有数据时的等待时间，毫秒
+    private static final int MAX_KNOWN_TEMPLATES = 10000;
+
+    private static RouteAuditLog instance = new RouteAuditLog(DEFAULT_CAPACITY);
+
+    public static RouteAuditLog getInstance() {
+        return instance;
+    }
+
+    private final int mask;
+    private final RouteResult[] routes;
+    private final PhysicalDatasource[] backends;
+    private final long[] latencies;
+    private final boolean[] writes;
+    // 槽位上已经写完的记录序号，后台线程以此判断该槽是否可以读取
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong(); // 下一个要写入的序号
+    private volatile long consumed; // 下一个要读取的序号，只由后台线程修改
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile double readSampleRate;
+    private volatile double writeSampleRate;
+
+    private Thread writer;
+    private volatile boolean running;
+
+    RouteAuditLog(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+        this.mask = capacity - 1;
+        this.routes = new RouteResult[capacity];
+        this.backends = new PhysicalDatasource[capacity];
+        this.latencies = new long[capacity];
+        this.writes = new boolean[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * 任一采样率大于0时为开启状态
+     */
+    public boolean isEnabled() {
+        return readSampleRate > 0 || writeSampleRate > 0;
+    }
+
+    /**
+     * @param readSampleRate
+     *            读语句的采样率，0到1，0为不记录
+     * @param writeSampleRate
+     *            写语句的采样率
+     */
+    public synchronized void setSampleRate(double readSampleRate, double writeSampleRate) {
+        this.readSampleRate = readSampleRate;
+        this.writeSampleRate = writeSampleRate;
+        if (isEnabled()) {
+            start();
+        }
+    }
+
+    /**
+     * 语句执行完成后调用
+     *
+     * @param route
+     *            路由结果，事务中不经过路由的语句为null
+     */
+    public void record(RouteResult route, boolean write, PhysicalDatasource backend, long latencyNanos) {
+        double rate = write ? writeSampleRate : readSampleRate;
+        if (rate <= 0 || (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+            return;
+        }
+        long seq;
+        do {
+            seq = claimed.get();
+            if (seq - consumed > mask) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(seq, seq + 1));
+        int slot = (int) seq & mask;
+        routes[slot] = route;
+        backends[slot] = backend;
+        latencies[slot] = latencyNanos;
+        writes[slot] = write;
+        published.lazySet(slot, seq);
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, "rwdb-route-audit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 停止后台线程，停止前把缓冲区中剩下的记录写完
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(DRAIN_INTERVAL * 5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    private void drainLoop() {
+        Set<Long> knownTemplates = new HashSet<Long>();
+        long reportedDropped = 0;
+        while (running) {
+            if (drain(knownTemplates) == 0) {
+                try {
+                    Thread.sleep(DRAIN_INTERVAL);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            long d = dropped.get();
+            if (d != reportedDropped) {
+                auditLog.warn("route audit buffer full, dropped={}", d - reportedDropped);
+                reportedDropped = d;
+            }
+        }
+        drain(knownTemplates);
+    }
+
+    private int drain(Set<Long> knownTemplates) {
+        int count = 0;
+        long seq = consumed;
+        while (true) {
+            int slot = (int) seq & mask;
+            if (published.get(slot) != seq) {
+                break;
+            }
+            RouteResult route = routes[slot];
+            PhysicalDatasource backend = backends[slot];
+            long latency = latencies[slot];
+            boolean write = writes[slot];
+            routes[slot] = null;
+            backends[slot] = null;
+            seq++;
+            consumed = seq;
+            count++;
+            try {
+                write(route, write, backend, latency, knownTemplates);
+            } catch (RuntimeException e) {
+                log.warn("write route audit error", e);
+            }
+        }
+        return count;
+    }
+
+    private void write(RouteResult route, boolean write, PhysicalDatasource backend, long latencyNanos,
+            Set<Long> knownTemplates) {
+        if (!auditLog.isInfoEnabled()) {
+            return;
+        }
+        long templateId = route == null ? 0 : route.getTemplateId();
+        if (route != null && route.getTemplate() != null && knownTemplates.add(templateId)) {
+            if (knownTemplates.size() > MAX_KNOWN_TEMPLATES) {
+                knownTemplates.clear();
+                knownTemplates.add(templateId);
+            }
+            auditLog.info("template tpl={} sql={}", Long.toHexString(templateId), route.getTemplate());
+        }
+        String decision = route != null ? route.getTartgetHost() : (write ? "WRITE" : "READ");
+        auditLog.info("route tpl={} decision={} backend={} latencyUs={}", Long.toHexString(templateId), decision,
+                backend == null ? "-" : backend.getName(), latencyNanos / 1000);
+    }
+
+}
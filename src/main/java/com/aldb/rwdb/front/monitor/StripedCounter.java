@@ -0,0 +1,44 @@
+package com.aldb.rwdb.front.monitor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分段计数器，不同线程累加到不同的槽上，减少多线程同时计数时的CAS冲突，读取时求和。
+ * 每个槽之间隔开一个缓存行，避免伪共享
+ *
+ */
+public class StripedCounter {
+
+    private static final int STRIPES = 8; // 必须是2的幂
+    private static final int PADDING = 8; // 8个long为64字节，一个缓存行
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void add(long x) {
+        cells.addAndGet(stripeIndex() * PADDING, x);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+
+    static int stripeIndex() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 8)) & (STRIPES - 1);
+    }
+
+}
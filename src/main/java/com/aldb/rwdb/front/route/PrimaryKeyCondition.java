@@ -0,0 +1,44 @@
+package com.aldb.rwdb.front.route;
+
+import java.io.Serializable;
+
+/**
+ * 单表按主键的条件，用于行缓存:查询为where pk = ?，更新、删除为where中以and连接的pk = ?或pk in (...)。
+ * 主键值以模板中?的编号表示，执行时再从sql常量或PreparedStatement参数中取值
+ *
+ */
+public class PrimaryKeyCondition implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String table;
+	private final int[] ordinals;
+	private final boolean query;
+
+	/**
+	 * @param table
+	 *            小写的表名
+	 * @param ordinals
+	 *            主键值在模板中的?编号，从0开始；为空数组时表示不影响已缓存的行(如普通insert)
+	 * @param query
+	 *            是否为按主键的查询
+	 */
+	public PrimaryKeyCondition(String table, int[] ordinals, boolean query) {
+		this.table = table;
+		this.ordinals = ordinals;
+		this.query = query;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	public int[] getOrdinals() {
+		return ordinals;
+	}
+
+	public boolean isQuery() {
+		return query;
+	}
+
+}
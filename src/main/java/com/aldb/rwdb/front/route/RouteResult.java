@@ -2,6 +2,8 @@ package com.aldb.rwdb.front.route;
 
 import java.io.Serializable;
 
+import com.aldb.rwdb.util.SQLNormalizer;
+
 public class RouteResult implements Serializable {
 	/**
 	 * 
@@ -10,6 +12,15 @@ public class RouteResult implements Serializable {
 	
 	private String stmt;
 	private String tartgetHost;
+	// 是否为写，一般即路由到主库；路由提示指定目标时按语句本身判断
+	private boolean write;
+	// 参数化之后的sql模板及其指纹，用于路由审计日志
+	private String template;
+	private long templateId;
+	// sql涉及的表，只在开启缓存或按表路由时解析，用于缓存失效和表路由规则
+	private String[] tables;
+	private boolean resultCacheable; // 是否为需要缓存查询结果的模板
+	private PrimaryKeyCondition primaryKeyCondition; // 开启行缓存的表上按主键的条件
 
 	public RouteResult() {
 		super();
@@ -31,4 +42,49 @@ public class RouteResult implements Serializable {
 		this.tartgetHost = tartgetHost;
 	}
 
+	public boolean isWrite() {
+		return write;
+	}
+
+	public void setWrite(boolean write) {
+		this.write = write;
+	}
+
+	public String getTemplate() {
+		return template;
+	}
+
+	public void setTemplate(String template) {
+		this.template = template;
+		this.templateId = template == null ? 0 : SQLNormalizer.fingerprint(template);
+	}
+
+	public long getTemplateId() {
+		return templateId;
+	}
+
+	public String[] getTables() {
+		return tables;
+	}
+
+	public void setTables(String[] tables) {
+		this.tables = tables;
+	}
+
+	public boolean isResultCacheable() {
+		return resultCacheable;
+	}
+
+	public void setResultCacheable(boolean resultCacheable) {
+		this.resultCacheable = resultCacheable;
+	}
+
+	public PrimaryKeyCondition getPrimaryKeyCondition() {
+		return primaryKeyCondition;
+	}
+
+	public void setPrimaryKeyCondition(PrimaryKeyCondition primaryKeyCondition) {
+		this.primaryKeyCondition = primaryKeyCondition;
+	}
+
 }
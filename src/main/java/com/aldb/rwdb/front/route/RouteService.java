@@ -1,10 +1,21 @@
 package com.aldb.rwdb.front.route;
 
 import java.sql.SQLSyntaxErrorException;
+import java.util.Map;
 
+import com.aldb.rwdb.BaseService;
 import com.aldb.rwdb.front.cache.CachePool;
 import com.aldb.rwdb.front.cache.CacheService;
+import com.aldb.rwdb.front.cache.ResultCache;
+import com.aldb.rwdb.front.cache.RowCache;
+import com.aldb.rwdb.front.monitor.ProxyMetrics;
+import com.aldb.rwdb.front.monitor.RouteAuditLog;
 import com.aldb.rwdb.front.route.support.DruidRouteStrategy;
+import com.aldb.rwdb.front.route.support.SQLHintParser;
+import com.aldb.rwdb.front.route.support.SQLLexClassifier;
+import com.aldb.rwdb.util.AhoCorasickMatcher;
+import com.aldb.rwdb.util.Constant;
+import com.aldb.rwdb.util.SQLNormalizer;
 
 /**
  * 基本原理，是利用druid的sql解析 原始sql获取相关的sql内容，然后进行相应的路由
@@ -25,33 +36,138 @@ public class RouteService {
 
 	public RouteResult route(RouteCondition condition)
 			throws SQLSyntaxErrorException {
+		return route(condition, null);
+	}
+
+	/**
+	 * @param scopeTarget
+	 *            RoutingScope指定的路由目标，为null时正常路由；指定时不经过路由缓存，也不解析sql，
+	 *            指定从库时只作用于读，写语句仍然走主库
+	 */
+	public RouteResult route(RouteCondition condition, String scopeTarget)
+			throws SQLSyntaxErrorException {
+		long start = System.nanoTime();
+		RouteResult rr = scopeTarget == null ? routeWithCache(condition)
+				: doRoute(condition, templateIfNeeded(condition), scopeTarget);
+		ProxyMetrics.getInstance().recordRoute(rr.getTartgetHost(),
+				System.nanoTime() - start);
+		return rr;
+	}
+
+	private RouteResult routeWithCache(RouteCondition condition)
+			throws SQLSyntaxErrorException {
+
+		if (cachePool == null || isSpecialWrite(condition.getSql())) {
+			return doRoute(condition, templateIfNeeded(condition), null);
+		}
+		// 以参数化之后的sql作为key，只是常量不同的sql共用一个路由结果
+		String key = SQLNormalizer.normalize(condition.getSql());
+		RouteResult rr = (RouteResult) cachePool.get(key);
+		if (rr != null) {
+			return rr;
+		}
+		RouteResult newRr = doRoute(condition, key, null);
+		cachePool.putIfAbsent(key, newRr);
+		return newRr;
+
+	}
+
+	/**
+	 * 特殊写sql按原始sql匹配，可能包含常量，参数化之后的key不能区分，匹配上的不读也不写路由缓存，
+	 * 否则会与只是常量不同的sql互相使用对方的路由结果
+	 */
+	private static boolean isSpecialWrite(String sql) {
+		AhoCorasickMatcher matcher = BaseService.getSpecialWriteSqlMatcher();
+		return matcher != null && matcher.matches(sql);
+	}
+
+	/**
+	 * 没有路由缓存时只在开启审计日志、查询结果缓存或行缓存时才需要模板
+	 */
+	private static String templateIfNeeded(RouteCondition condition) {
+		return (RouteAuditLog.getInstance().isEnabled()
+				|| BaseService.getResultCache() != null || BaseService
+				.getRowCache() != null) ? SQLNormalizer.normalize(condition
+				.getSql()) : null;
+	}
 
-		/*
-		 * RouteResult rr = (RouteResult) cachePool.get(condition.getSql());
-		 * 
-		 * if (rr != null) { return rr; }
-		 * 
-		 * RouteResult newRr = new RouteResult();
-		 * 
-		 * newRr.setStmt(condition.getSql());
-		 * 
-		 * String dbKey = removeBackquote(routeStrategy.route(condition)); dbKey
-		 * = removeTableDot(dbKey);
-		 * 
-		 * newRr.setTartgetHost(getTartgetMycat(dbKey));
-		 * newRr.setTartgetHost(dbKey);
-		 * cachePool.putIfAbsent(condition.getSql(), newRr);
-		 * 
-		 * return newRr;
-		 */
-
-		// 去掉缓存机制，因为在现有项目中缓存的需要并不是很强烈
+	private RouteResult doRoute(RouteCondition condition, String template,
+			String scopeTarget) throws SQLSyntaxErrorException {
 		RouteResult newRr = new RouteResult();
 		newRr.setStmt(condition.getSql());
-		String dbKey = removeBackquote(routeStrategy.route(condition));
+		newRr.setTemplate(template);
+		// 以路由提示开头的语句直接按提示路由，其次按作用域，都不再匹配特殊写sql和解析
+		String dbKey = SQLHintParser.parse(condition.getSql());
+		if (dbKey == null) {
+			dbKey = scopeTarget;
+		}
+		TableRouteRules rules = BaseService.getTableRouteRules();
+		boolean ruleRoute = false;
+		boolean write;
+		if (dbKey != null) {
+			// 无法确定的也按写处理
+			write = SQLLexClassifier.classify(condition.getSql()) != SQLLexClassifier.SQLType.READ;
+			// 提示和作用域只能改变读的去向，写语句总是走主库，不能在从库上执行
+			if (write) {
+				dbKey = Constant.RW.WRITE.name();
+			}
+		} else {
+			dbKey = removeBackquote(routeStrategy.route(condition));
+			write = Constant.RW.WRITE.name().equals(dbKey);
+			// 表路由规则只作用于正常路由到从库的读
+			ruleRoute = rules != null && Constant.RW.READ.name().equals(dbKey);
+		}
+		newRr.setWrite(write);
+		ResultCache resultCache = BaseService.getResultCache();
+		RowCache rowCache = BaseService.getRowCache();
+		if (resultCache != null) {
+			newRr.setResultCacheable(!write
+					&& resultCache.isCacheableTemplate(template));
+		}
+		// 写语句用于失效缓存，读语句只解析需要缓存的模板或需要按表路由的
+		if (ruleRoute
+				|| ((resultCache != null || rowCache != null) && (write
+						|| newRr.isResultCacheable() || rowCache != null))) {
+			newRr.setTables(DruidRouteStrategy.extractTables(
+					condition.getSql(), condition.getDbType()));
+		}
+		if (ruleRoute && newRr.getTables() != null) {
+			String ruleTarget = rules.route(newRr.getTables());
+			if (ruleTarget != null) {
+				dbKey = ruleTarget;
+			}
+		}
 		newRr.setTartgetHost(dbKey);
+		if (rowCache != null && newRr.getTables() != null
+				&& containsAny(rowCache.getPrimaryKeys(), newRr.getTables())) {
+			newRr.setPrimaryKeyCondition(DruidRouteStrategy
+					.extractPrimaryKeyCondition(template,
+							condition.getDbType(), rowCache.getPrimaryKeys()));
+		}
 		return newRr;
+	}
+
+	private static boolean containsAny(Map<String, String> primaryKeys,
+			String[] tables) {
+		for (String table : tables) {
+			if (primaryKeys.containsKey(table)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 写库表集合、特殊写sql或实时模式变化时，已缓存的路由结果都可能失效
+	 */
+	public void clearCache() {
+		if (cachePool != null) {
+			cachePool.clearCache();
+		}
+	}
 
+	public CachePool getCachePool() {
+		return cachePool;
 	}
 
 	private String getTartgetMycat(String tableName)
@@ -0,0 +1,89 @@
+package com.aldb.rwdb.front.route;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.aldb.rwdb.front.keypool.GtidSet;
+
+/**
+ * 一个逻辑会话(即当前线程)上与路由相关的状态，跨越同一线程先后使用的多个RWConnection
+ * 
+ */
+public class RouteSession {
+
+    private static final ThreadLocal<RouteSession> SESSION = new ThreadLocal<RouteSession>() {
+        @Override
+        protected RouteSession initialValue() {
+            return new RouteSession();
+        }
+    };
+
+    public static RouteSession current() {
+        return SESSION.get();
+    }
+
+    // 本会话最后一次写入提交后主库的GTID集合，之后的读只能到已经执行了它的从库
+    private GtidSet writeGtidSet;
+
+    // 本会话最后一次写的时间(System.nanoTime)，0表示还没有写过
+    private long lastWriteTime;
+
+    public void markWrite() {
+        long now = System.nanoTime();
+        // 0作为未写过的标记
+        lastWriteTime = now == 0 ? 1 : now;
+    }
+
+    /**
+     * 距离最后一次写是否还在window毫秒之内
+     */
+    public boolean isWithinWriteWindow(long window) {
+        return lastWriteTime != 0 && System.nanoTime() - lastWriteTime < window * 1000000L;
+    }
+
+    // 当前打开的RoutingScope的路由目标，按打开的顺序，最后一个生效
+    private List<String> scopeTargets;
+
+    /**
+     * @return 当前生效的RoutingScope的路由目标，不在作用域内时返回null
+     */
+    public String getScopeTarget() {
+        List<String> targets = scopeTargets;
+        return targets == null || targets.isEmpty() ? null : targets.get(targets.size() - 1);
+    }
+
+    /**
+     * @return 新作用域在栈中的位置，关闭时传给popScope
+     */
+    int pushScope(String target) {
+        if (scopeTargets == null) {
+            scopeTargets = new ArrayList<String>(2);
+        }
+        scopeTargets.add(target);
+        return scopeTargets.size() - 1;
+    }
+
+    /**
+     * 关闭depth位置上的作用域，其中嵌套的还没有关闭的作用域一起关闭
+     */
+    void popScope(int depth) {
+        while (scopeTargets.size() > depth) {
+            scopeTargets.remove(scopeTargets.size() - 1);
+        }
+    }
+
+    public GtidSet getWriteGtidSet() {
+        return writeGtidSet;
+    }
+
+    public void setWriteGtidSet(GtidSet writeGtidSet) {
+        this.writeGtidSet = writeGtidSet;
+    }
+
+    /**
+     * 清除会话状态，线程归还给线程池之前可以调用
+     */
+    public static void clear() {
+        SESSION.remove();
+    }
+}
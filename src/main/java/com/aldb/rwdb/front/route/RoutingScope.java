@@ -0,0 +1,66 @@
+package com.aldb.rwdb.front.route;
+
+import com.aldb.rwdb.util.Constant;
+
+/**
+ * 当前线程上的路由作用域，作用域内不在事务中的语句都按指定的目标路由，不再匹配特殊写sql和解析:
+ *
+ * <pre>
+ * try (RoutingScope scope = RWDataSource.forceMaster()) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * 作用域可以嵌套，最内层的生效；sql开头的路由提示优先于作用域。forceReplica、forceReplicaGroup只作用于读，
+ * 作用域内的写语句(包括无法确定读写的语句)仍然走主库。必须在打开它的线程上关闭
+ *
+ */
+public final class RoutingScope implements AutoCloseable {
+
+    private final RouteSession session;
+    private final String target;
+    private final int depth;
+    private boolean closed;
+
+    private RoutingScope(String target) {
+        this.session = RouteSession.current();
+        this.target = target;
+        this.depth = session.pushScope(target);
+    }
+
+    /**
+     * 读写都走主库，替代全局的实时模式
+     */
+    public static RoutingScope forceMaster() {
+        return new RoutingScope(Constant.RW.WRITE.name());
+    }
+
+    /**
+     * 读走从库，从库都不可用时转到主库；写仍然走主库
+     */
+    public static RoutingScope forceReplica() {
+        return new RoutingScope(Constant.RW.READ.name());
+    }
+
+    /**
+     * 读走指定的从库组，写仍然走主库
+     */
+    public static RoutingScope forceReplicaGroup(String group) {
+        return new RoutingScope(Constant.getGroupTarget(group));
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * 关闭作用域，重复关闭没有影响
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            session.popScope(depth);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.aldb.rwdb.front.route;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.aldb.rwdb.front.route.support.SQLHintParser;
+
+/**
+ * 按表名指定读语句的路由目标，如audit_*走主库、report_*走从库组olap。规则按配置的顺序匹配，
+ * 语句涉及的任意一张表匹配上的第一条规则生效，都不匹配时按正常路由。写语句总是走主库，不受规则影响
+ *
+ */
+public class TableRouteRules {
+
+    private final List<Pattern> patterns = new ArrayList<Pattern>();
+    private final List<String> targets = new ArrayList<String>();
+
+    /**
+     * @param rules
+     *            表名模式(*匹配任意字符，不区分大小写)到目标(master、replica或group=组名)，按迭代顺序匹配
+     */
+    public TableRouteRules(Map<String, String> rules) {
+        for (Map.Entry<String, String> entry : rules.entrySet()) {
+            String target = SQLHintParser.parseTarget(entry.getValue());
+            if (target == null) {
+                throw new IllegalArgumentException("unknown route target " + entry.getValue() + " for table "
+                        + entry.getKey());
+            }
+            patterns.add(compile(entry.getKey().trim().toLowerCase()));
+            targets.add(target);
+        }
+    }
+
+    private static Pattern compile(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        int star;
+        while ((star = glob.indexOf('*', start)) >= 0) {
+            if (star > start) {
+                regex.append(Pattern.quote(glob.substring(start, star)));
+            }
+            regex.append(".*");
+            start = star + 1;
+        }
+        if (start < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(start)));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * @param tables
+     *            语句涉及的表，小写、不带库名
+     * @return 匹配的路由目标，没有匹配的规则时返回null
+     */
+    public String route(String[] tables) {
+        for (int i = 0; i < patterns.size(); i++) {
+            Pattern pattern = patterns.get(i);
+            for (String table : tables) {
+                if (pattern.matcher(table).matches()) {
+                    return targets.get(i);
+                }
+            }
+        }
+        return null;
+    }
+
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+}
@@ -1,20 +1,45 @@
 package com.aldb.rwdb.front.route.support;
 
 import java.sql.SQLSyntaxErrorException;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.aldb.rwdb.BaseService;
+import com.aldb.rwdb.front.route.PrimaryKeyCondition;
 import com.aldb.rwdb.front.route.RouteCondition;
 import com.aldb.rwdb.front.route.RouteStrategy;
+import com.aldb.rwdb.util.AhoCorasickMatcher;
 import com.aldb.rwdb.util.Constant;
+import com.aldb.rwdb.util.SQLNormalizer;
+import com.alibaba.druid.sql.SQLUtils;
+import com.alibaba.druid.sql.ast.SQLExpr;
 import com.alibaba.druid.sql.ast.SQLStatement;
+import com.alibaba.druid.sql.ast.expr.SQLBinaryOpExpr;
+import com.alibaba.druid.sql.ast.expr.SQLBinaryOperator;
+import com.alibaba.druid.sql.ast.expr.SQLIdentifierExpr;
+import com.alibaba.druid.sql.ast.expr.SQLInListExpr;
+import com.alibaba.druid.sql.ast.expr.SQLPropertyExpr;
+import com.alibaba.druid.sql.ast.expr.SQLVariantRefExpr;
+import com.alibaba.druid.sql.ast.statement.SQLDeleteStatement;
+import com.alibaba.druid.sql.ast.statement.SQLInsertStatement;
+import com.alibaba.druid.sql.ast.statement.SQLSelect;
+import com.alibaba.druid.sql.ast.statement.SQLSelectQuery;
+import com.alibaba.druid.sql.ast.statement.SQLSelectQueryBlock;
 import com.alibaba.druid.sql.ast.statement.SQLSelectStatement;
+import com.alibaba.druid.sql.ast.statement.SQLUnionQuery;
+import com.alibaba.druid.sql.ast.statement.SQLUpdateStatement;
+import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlInsertStatement;
+import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlSelectQueryBlock;
 import com.alibaba.druid.sql.dialect.mysql.visitor.MySqlSchemaStatVisitor;
+import com.alibaba.druid.sql.dialect.oracle.ast.stmt.OracleSelect;
 import com.alibaba.druid.sql.parser.SQLParserUtils;
 import com.alibaba.druid.sql.parser.SQLStatementParser;
+import com.alibaba.druid.sql.visitor.SchemaStatVisitor;
 import com.alibaba.druid.stat.TableStat.Name;
 
 public class DruidRouteStrategy implements RouteStrategy {
@@ -25,13 +50,23 @@ public class DruidRouteStrategy implements RouteStrategy {
     public String route(RouteCondition condition) throws SQLSyntaxErrorException {
 
         String sql = condition.getSql();
-        log.info("init_need_route_sql={}", sql);
-        if (BaseService.getSpecialWriteSql() != null) {
-            for (String sepecialSql : BaseService.getSpecialWriteSql()) {
-                if (sql.indexOf(sepecialSql) > -1) {
-                    return Constant.RW.WRITE.name();
-                }
+        AhoCorasickMatcher specialWriteSqlMatcher = BaseService.getSpecialWriteSqlMatcher();
+        if (specialWriteSqlMatcher != null && specialWriteSqlMatcher.matches(sql)) {
+            return Constant.RW.WRITE.name();
+        }
+        // 绝大多数语句通过词法扫描就能确定读写，只有不确定的或实时模式下需要表名的读才交给druid解析
+        switch (SQLLexClassifier.classify(sql)) {
+        case WRITE:
+        case LOCKING_READ:
+            // 加锁读必须在主库上加锁，否则悲观锁失效
+            return Constant.RW.WRITE.name();
+        case READ:
+            if (!BaseService.isRealTime()) {
+                return Constant.RW.READ.name();
             }
+            break;
+        default:
+            break;
         }
         String dbName = null;
         try {
@@ -39,7 +74,7 @@ public class DruidRouteStrategy implements RouteStrategy {
                     .toLowerCase());
             SQLStatement statement = parser.parseStatement();
 
-            if (statement instanceof SQLSelectStatement) {
+            if (statement instanceof SQLSelectStatement && !isLockingRead((SQLSelectStatement) statement)) {
                 dbName = Constant.RW.READ.name();
                 if (BaseService.isRealTime()) { //进行实时才需要将所有读取从库的路由到写库
                     boolean change = true;
@@ -48,7 +83,9 @@ public class DruidRouteStrategy implements RouteStrategy {
                         MySqlSchemaStatVisitor visitor = new MySqlSchemaStatVisitor();
                         statement.accept(visitor);
                         Set<Name> tableNames = visitor.getTables().keySet();
-                        logReadTables(tableNames);
+                        if (log.isDebugEnabled()) {
+                            logReadTables(tableNames);
+                        }
                         for (Name name : tableNames) {
                             if (!BaseService.getAllWritedbTables().contains(name.getName().trim())) {
                                 change = false;
@@ -76,10 +113,186 @@ public class DruidRouteStrategy implements RouteStrategy {
             }
 
         }
-        log.info("need_route_sql={},result={}", sql, dbName);
         return dbName;
     }
 
+    /**
+     * 解析sql涉及的表，去掉引号和库名并转成小写，供查询结果缓存按表失效
+     *
+     * @return 解析失败或没有涉及任何表时返回null
+     */
+    public static String[] extractTables(String sql, String dbType) {
+        try {
+            String type = dbType == null ? null : dbType.toLowerCase();
+            List<SQLStatement> statements = SQLUtils.parseStatements(sql, type);
+            SchemaStatVisitor visitor = SQLUtils.createSchemaStatVisitor(statements, type);
+            for (SQLStatement statement : statements) {
+                statement.accept(visitor);
+            }
+            Set<String> tables = new TreeSet<String>();
+            for (Name name : visitor.getTables().keySet()) {
+                String table = normalizeName(name.getName());
+                if (table.length() > 0) {
+                    tables.add(table);
+                }
+            }
+            return tables.isEmpty() ? null : tables.toArray(new String[tables.size()]);
+        } catch (Exception e) {
+            log.debug("extract tables error,sql={}", sql, e);
+            return null;
+        }
+    }
+
+    /**
+     * 解析单表按主键的查询、更新、删除条件，供行缓存使用。查询只接受where pk = ?并且模板中只有这一个?，
+     * 更新、删除接受以and连接的pk = ?或pk in (...)，普通insert返回不影响已缓存行的条件
+     *
+     * @param template
+     *            规整后的sql模板，常量都已替换为?
+     * @param primaryKeys
+     *            开启行缓存的表及其主键列，均为小写
+     * @return 不是单表按主键的语句，或者不能确定影响了哪些行时返回null
+     */
+    public static PrimaryKeyCondition extractPrimaryKeyCondition(String template, String dbType,
+            Map<String, String> primaryKeys) {
+        try {
+            String type = dbType == null ? null : dbType.toLowerCase();
+            List<SQLStatement> statements = SQLUtils.parseStatements(template, type);
+            if (statements.size() != 1) {
+                return null;
+            }
+            SQLStatement statement = statements.get(0);
+            // 子查询或多表的语句结果不只由主键决定
+            SchemaStatVisitor visitor = SQLUtils.createSchemaStatVisitor(statements, type);
+            statement.accept(visitor);
+            if (visitor.getTables().size() != 1) {
+                return null;
+            }
+            String table = normalizeName(visitor.getTables().keySet().iterator().next().getName());
+            String pk = primaryKeys.get(table);
+            if (pk == null) {
+                return null;
+            }
+            if (statement instanceof SQLSelectStatement) {
+                SQLSelectQuery query = ((SQLSelectStatement) statement).getSelect().getQuery();
+                if (!(query instanceof SQLSelectQueryBlock) || SQLNormalizer.placeholderPositions(template).length != 1) {
+                    return null;
+                }
+                SQLSelectQueryBlock block = (SQLSelectQueryBlock) query;
+                SQLExpr where = block.getWhere();
+                if (block.getGroupBy() != null || !(where instanceof SQLBinaryOpExpr)
+                        || ((SQLBinaryOpExpr) where).getOperator() != SQLBinaryOperator.Equality) {
+                    return null;
+                }
+                int[] ordinals = keyOrdinals(where, pk);
+                return ordinals == null ? null : new PrimaryKeyCondition(table, ordinals, true);
+            }
+            if (statement instanceof SQLUpdateStatement || statement instanceof SQLDeleteStatement) {
+                SQLExpr where = statement instanceof SQLUpdateStatement ? ((SQLUpdateStatement) statement).getWhere()
+                        : ((SQLDeleteStatement) statement).getWhere();
+                int[] ordinals = keyOrdinals(where, pk);
+                return ordinals == null ? null : new PrimaryKeyCondition(table, ordinals, false);
+            }
+            if (statement instanceof SQLInsertStatement) {
+                // 只缓存存在的行，新插入的行不会已经在缓存中；on duplicate key update会修改已有的行
+                if (statement instanceof MySqlInsertStatement
+                        && !((MySqlInsertStatement) statement).getDuplicateKeyUpdate().isEmpty()) {
+                    return null;
+                }
+                return new PrimaryKeyCondition(table, new int[0], false);
+            }
+            return null;
+        } catch (Exception e) {
+            log.debug("extract primary key condition error,sql={}", template, e);
+            return null;
+        }
+    }
+
+    /**
+     * where中主键的取值对应的?编号
+     */
+    private static int[] keyOrdinals(SQLExpr where, String pk) {
+        if (where instanceof SQLBinaryOpExpr) {
+            SQLBinaryOpExpr op = (SQLBinaryOpExpr) where;
+            if (op.getOperator() == SQLBinaryOperator.BooleanAnd) {
+                int[] ordinals = keyOrdinals(op.getLeft(), pk);
+                return ordinals != null ? ordinals : keyOrdinals(op.getRight(), pk);
+            }
+            if (op.getOperator() == SQLBinaryOperator.Equality) {
+                if (isColumn(op.getLeft(), pk) && op.getRight() instanceof SQLVariantRefExpr) {
+                    return new int[] { ((SQLVariantRefExpr) op.getRight()).getIndex() };
+                }
+                if (isColumn(op.getRight(), pk) && op.getLeft() instanceof SQLVariantRefExpr) {
+                    return new int[] { ((SQLVariantRefExpr) op.getLeft()).getIndex() };
+                }
+            }
+            return null;
+        }
+        if (where instanceof SQLInListExpr) {
+            SQLInListExpr in = (SQLInListExpr) where;
+            if (in.isNot() || !isColumn(in.getExpr(), pk)) {
+                return null;
+            }
+            List<SQLExpr> targets = in.getTargetList();
+            int[] ordinals = new int[targets.size()];
+            for (int i = 0; i < ordinals.length; i++) {
+                if (!(targets.get(i) instanceof SQLVariantRefExpr)) {
+                    return null;
+                }
+                ordinals[i] = ((SQLVariantRefExpr) targets.get(i)).getIndex();
+            }
+            return ordinals;
+        }
+        return null;
+    }
+
+    private static boolean isColumn(SQLExpr expr, String column) {
+        String name;
+        if (expr instanceof SQLIdentifierExpr) {
+            name = ((SQLIdentifierExpr) expr).getName();
+        } else if (expr instanceof SQLPropertyExpr) {
+            name = ((SQLPropertyExpr) expr).getName();
+        } else {
+            return false;
+        }
+        return normalizeName(name).equals(column);
+    }
+
+    /**
+     * 去掉库名和引号并转成小写
+     */
+    private static String normalizeName(String name) {
+        String n = name.trim();
+        int dot = n.lastIndexOf('.');
+        if (dot >= 0) {
+            n = n.substring(dot + 1);
+        }
+        return n.replace("`", "").replace("\"", "").replace("[", "").replace("]", "").toLowerCase();
+    }
+
+    /**
+     * select ... for update、lock in share mode 之类的加锁读
+     */
+    static boolean isLockingRead(SQLSelectStatement statement) {
+        SQLSelect select = statement.getSelect();
+        if (select instanceof OracleSelect && ((OracleSelect) select).getForUpdate() != null) {
+            return true;
+        }
+        return isLockingRead(select.getQuery());
+    }
+
+    private static boolean isLockingRead(SQLSelectQuery query) {
+        if (query instanceof MySqlSelectQueryBlock) {
+            MySqlSelectQueryBlock block = (MySqlSelectQueryBlock) query;
+            return block.isForUpdate() || block.isLockInShareMode();
+        }
+        if (query instanceof SQLUnionQuery) {
+            SQLUnionQuery union = (SQLUnionQuery) query;
+            return isLockingRead(union.getLeft()) || isLockingRead(union.getRight());
+        }
+        return false;
+    }
+
     /*
      * private ThreadLocal<Random> random;
      * 
@@ -88,11 +301,11 @@ public class DruidRouteStrategy implements RouteStrategy {
      * @Override protected Random initialValue() { return new Random(); } }; }
      */
     private void logReadTables(Set<Name> tableNames) {
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = new StringBuilder();
         for (Name name : tableNames) {
             sb.append(name.getName());
             sb.append(",");
         }
-        log.info("read all table name is {}", sb.toString());
+        log.debug("read all table name is {}", sb);
     }
 }
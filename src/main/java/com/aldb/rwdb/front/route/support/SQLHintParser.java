@@ -0,0 +1,100 @@
+package com.aldb.rwdb.front.route.support;
+
+import com.aldb.rwdb.util.Constant;
+
+/**
+ * 识别sql开头的路由提示，只扫描开头的一个注释，不做任何解析:
+ *
+ * <pre>
+ * /*+ rwdb:master *&#47;          路由到主库
+ * /*+ rwdb:replica *&#47;         路由到从库
+ * /*+ rwdb:group=reports *&#47;   路由到名为reports的从库组
+ * </pre>
+ *
+ * replica和group只作用于读，写语句(包括无法确定读写的语句)即使带有这两种提示也走主库。
+ * 其它/*+ ... *&#47;(如mysql的优化器提示)不是路由提示，按正常流程路由
+ *
+ */
+public final class SQLHintParser {
+
+    private static final String HINT_START = "/*+";
+    private static final String HINT_PREFIX = "rwdb:";
+    private static final String GROUP_PREFIX = "group=";
+
+    private SQLHintParser() {
+    }
+
+    /**
+     * @return 提示指定的路由目标，WRITE、READ或从库组的目标；sql不以路由提示开头时返回null
+     */
+    public static String parse(String sql) {
+        if (sql == null) {
+            return null;
+        }
+        int len = sql.length();
+        int i = 0;
+        while (i < len && Character.isWhitespace(sql.charAt(i))) {
+            i++;
+        }
+        if (!sql.startsWith(HINT_START, i)) {
+            return null;
+        }
+        i = skipWhitespace(sql, i + HINT_START.length());
+        if (!sql.regionMatches(true, i, HINT_PREFIX, 0, HINT_PREFIX.length())) {
+            return null;
+        }
+        int start = i + HINT_PREFIX.length();
+        int end = start;
+        while (end < len && isValueChar(sql.charAt(end))) {
+            end++;
+        }
+        if (!sql.startsWith("*/", skipWhitespace(sql, end))) {
+            return null;
+        }
+        return parseTarget(sql, start, end);
+    }
+
+    /**
+     * 解析提示中rwdb:之后的部分:master、replica或group=组名，也用于表路由规则的目标
+     * 
+     * @return 不能识别时返回null
+     */
+    public static String parseTarget(String directive) {
+        String s = directive.trim();
+        for (int i = 0; i < s.length(); i++) {
+            if (!isValueChar(s.charAt(i))) {
+                return null;
+            }
+        }
+        return parseTarget(s, 0, s.length());
+    }
+
+    private static String parseTarget(String sql, int start, int end) {
+        if (matches(sql, start, end, "master")) {
+            return Constant.RW.WRITE.name();
+        }
+        if (matches(sql, start, end, "replica") || matches(sql, start, end, "slave")) {
+            return Constant.RW.READ.name();
+        }
+        int groupStart = start + GROUP_PREFIX.length();
+        if (end > groupStart && sql.regionMatches(true, start, GROUP_PREFIX, 0, GROUP_PREFIX.length())) {
+            return Constant.getGroupTarget(sql.substring(groupStart, end));
+        }
+        return null;
+    }
+
+    private static int skipWhitespace(String sql, int i) {
+        while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean matches(String sql, int start, int end, String word) {
+        return end - start == word.length() && sql.regionMatches(true, start, word, 0, word.length());
+    }
+
+    private static boolean isValueChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '=';
+    }
+}
@@ -0,0 +1,174 @@
+package com.aldb.rwdb.front.route.support;
+
+/**
+ * 在调用druid解析之前，对sql做一次单遍的词法扫描，跳过空白和注释，根据第一个关键字判断读写:
+ * SELECT/SHOW/DESC/EXPLAIN为读，SELECT ... FOR UPDATE/FOR SHARE/LOCK IN SHARE MODE为加锁读(路由到主库)，
+ * INSERT/UPDATE/DELETE/REPLACE/CALL等其它语句为写。无法确定的(WITH、可执行注释、多语句等)交给druid
+ * 
+ */
+public final class SQLLexClassifier {
+
+    public enum SQLType {
+        READ, WRITE, LOCKING_READ, UNKNOWN
+    }
+
+    private static final String[] READ_ONLY_KEYWORDS = { "SHOW", "DESC", "DESCRIBE", "EXPLAIN" };
+
+    // 可能被druid解析为select的非SELECT开头语句
+    private static final String[] AMBIGUOUS_KEYWORDS = { "WITH", "VALUES", "TABLE" };
+
+    private SQLLexClassifier() {
+    }
+
+    public static SQLType classify(String sql) {
+        if (sql == null) {
+            return SQLType.UNKNOWN;
+        }
+        int len = sql.length();
+        int i = 0;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c) || c == '(') {
+                i++;
+            } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                if (i + 2 < len && sql.charAt(i + 2) == '!') {
+                    return SQLType.UNKNOWN;
+                }
+                i = skipBlockComment(sql, i);
+            } else if (isLineComment(sql, i)) {
+                i = skipLineComment(sql, i);
+            } else {
+                break;
+            }
+        }
+        int start = i;
+        int end = wordEnd(sql, start);
+        if (end == start) {
+            return SQLType.UNKNOWN;
+        }
+        if (matches(sql, start, end, "SELECT")) {
+            return scanSelect(sql, end);
+        }
+        for (String keyword : READ_ONLY_KEYWORDS) {
+            if (matches(sql, start, end, keyword)) {
+                return SQLType.READ;
+            }
+        }
+        for (String keyword : AMBIGUOUS_KEYWORDS) {
+            if (matches(sql, start, end, keyword)) {
+                return SQLType.UNKNOWN;
+            }
+        }
+        return SQLType.WRITE;
+    }
+
+    /**
+     * 扫描SELECT之后的部分，查找加锁子句，引号和注释中的内容不参与判断
+     */
+    private static SQLType scanSelect(String sql, int from) {
+        int len = sql.length();
+        // 前两个单词的起止位置
+        int prev2Start = -1, prev2End = -1, prev1Start = -1, prev1End = -1;
+        int i = from;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(sql, i, c);
+            } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                if (i + 2 < len && sql.charAt(i + 2) == '!') {
+                    return SQLType.UNKNOWN;
+                }
+                i = skipBlockComment(sql, i);
+            } else if (isLineComment(sql, i)) {
+                i = skipLineComment(sql, i);
+            } else if (c == ';') {
+                i++;
+                while (i < len && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (i < len) {
+                    return SQLType.UNKNOWN;
+                }
+            } else if (isWordStart(c)) {
+                int end = wordEnd(sql, i);
+                if (prev1Start >= 0 && matches(sql, prev1Start, prev1End, "FOR")
+                        && (matches(sql, i, end, "UPDATE") || matches(sql, i, end, "SHARE"))) {
+                    return SQLType.LOCKING_READ;
+                }
+                if (prev2Start >= 0 && matches(sql, prev2Start, prev2End, "LOCK")
+                        && matches(sql, prev1Start, prev1End, "IN") && matches(sql, i, end, "SHARE")) {
+                    return SQLType.LOCKING_READ;
+                }
+                prev2Start = prev1Start;
+                prev2End = prev1End;
+                prev1Start = i;
+                prev1End = end;
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return SQLType.READ;
+    }
+
+    private static boolean isWordStart(char c) {
+        return Character.isLetter(c) || c == '_';
+    }
+
+    private static int wordEnd(String sql, int start) {
+        int len = sql.length();
+        int i = start;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '_' || c == '$') {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static boolean matches(String sql, int start, int end, String keyword) {
+        return end - start == keyword.length() && sql.regionMatches(true, start, keyword, 0, keyword.length());
+    }
+
+    private static boolean isLineComment(String sql, int i) {
+        char c = sql.charAt(i);
+        if (c == '#') {
+            return true;
+        }
+        return c == '-' && i + 2 < sql.length() && sql.charAt(i + 1) == '-'
+                && Character.isWhitespace(sql.charAt(i + 2));
+    }
+
+    private static int skipLineComment(String sql, int i) {
+        int end = sql.indexOf('\n', i);
+        return end < 0 ? sql.length() : end + 1;
+    }
+
+    private static int skipBlockComment(String sql, int i) {
+        int end = sql.indexOf("*/", i + 2);
+        return end < 0 ? sql.length() : end + 2;
+    }
+
+    private static int skipQuoted(String sql, int start, char quote) {
+        int len = sql.length();
+        int i = start + 1;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == '\\' && quote != '`') {
+                i += 2;
+            } else if (c == quote) {
+                if (i + 1 < len && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return len;
+    }
+}
@@ -0,0 +1,125 @@
+package com.aldb.rwdb.front.sql;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * PreparedStatement批量执行时每一行的参数。与RWParameters的存放方式相同，只是所有行依次平铺在同一组数组中，
+ * 第row行第i个参数(从1开始)的位置为row*width+i-1，addBatch时只做数组复制，不生成sql
+ * 
+ */
+class RWBatchParameters {
+
+	private static final int DEFAULT_ROWS = 16;
+
+	private byte[] types = new byte[0];
+	private long[] longs = new long[0];
+	private int[] ints = new int[0];
+	private Object[] objects = new Object[0];
+	private Object[] extras = new Object[0];
+	private int width; // 每行的参数个数，由第一行确定
+	private int rows;
+
+	/**
+	 * 保存当前设置的参数作为新的一行
+	 */
+	void addRow(RWParameters parameters) throws SQLException {
+		if (rows == 0) {
+			width = parameters.size();
+		} else if (parameters.size() != width) {
+			throw new SQLException(String.format("batch row %d has %d parameters, expected %d", rows,
+					parameters.size(), width));
+		}
+		int offset = rows * width;
+		ensureCapacity(offset + width);
+		parameters.copyTo(types, longs, ints, objects, extras, offset);
+		rows++;
+	}
+
+	private void ensureCapacity(int size) {
+		if (size > types.length) {
+			int newSize = Math.max(size, Math.max(types.length << 1, DEFAULT_ROWS * width));
+			types = Arrays.copyOf(types, newSize);
+			longs = Arrays.copyOf(longs, newSize);
+			ints = Arrays.copyOf(ints, newSize);
+			objects = Arrays.copyOf(objects, newSize);
+			extras = Arrays.copyOf(extras, newSize);
+		}
+	}
+
+	int size() {
+		return rows;
+	}
+
+	int getWidth() {
+		return width;
+	}
+
+	/**
+	 * 把第row行的参数设置到ps上，参数位置从offset+1开始
+	 */
+	void fillPreparedStatement(PreparedStatement ps, int row, int offset) throws SQLException {
+		int base = row * width;
+		for (int i = 0; i < width; i++) {
+			RWParameters.fill(ps, offset + i + 1, types[base + i], longs[base + i], ints[base + i],
+					objects[base + i], extras[base + i]);
+		}
+	}
+
+	/**
+	 * 估算第row行的参数发送到数据库时的字节数，用于合并多行insert时控制包的大小。
+	 * 流、lob等无法预先知道大小的参数返回-1
+	 */
+	int estimateSize(int row) {
+		int base = row * width;
+		int size = 0;
+		for (int i = base; i < base + width; i++) {
+			int n = estimateSize(types[i], objects[i]);
+			if (n < 0) {
+				return -1;
+			}
+			size += n;
+		}
+		return size;
+	}
+
+	private static int estimateSize(byte type, Object value) {
+		switch (type) {
+		case RWParameters.NONE:
+		case RWParameters.NULL:
+		case RWParameters.NULL_TYPE_NAME:
+			return 4;
+		case RWParameters.STRING:
+		case RWParameters.NSTRING:
+		case RWParameters.BYTES:
+		case RWParameters.OBJECT:
+		case RWParameters.OBJECT_TYPE:
+		case RWParameters.OBJECT_TYPE_SCALE:
+			if (value instanceof String) {
+				// utf8下一个字符最多3个字节，转义后的长度按同样的上限估算
+				return ((String) value).length() * 3 + 2;
+			}
+			if (value instanceof byte[]) {
+				return ((byte[]) value).length * 2 + 2;
+			}
+			return 32;
+		default:
+			return type >= RWParameters.BLOB && type != RWParameters.ROWID ? -1 : 32;
+		}
+	}
+
+	/**
+	 * 清空所有行，数组保留下来给下一批使用
+	 */
+	void clear() {
+		if (rows > 0) {
+			int used = rows * width;
+			Arrays.fill(objects, 0, used, null);
+			Arrays.fill(extras, 0, used, null);
+			rows = 0;
+			width = 0;
+		}
+	}
+
+}
@@ -15,13 +15,21 @@ import java.sql.SQLXML;
 import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Executor;
 
 import org.slf4j.LoggerFactory;
 
+import com.aldb.rwdb.BaseService;
+import com.aldb.rwdb.front.keypool.GtidSet;
+import com.aldb.rwdb.front.keypool.PhysicalDatasource;
+import com.aldb.rwdb.front.monitor.ProxyMetrics;
+import com.aldb.rwdb.front.route.RouteSession;
 import com.aldb.rwdb.front.sql.error.SQLError;
+import com.aldb.rwdb.util.Constant;
 
 public class RWConnection implements Connection {
 
@@ -40,6 +48,43 @@ public class RWConnection implements Connection {
 
     private Map<String, Class<?>> typeMap = null;
 
+    private boolean writeInTransaction; // 当前事务中是否有写操作，提交后需要记录主库的写入位置
+
+    // 每个角色最多持有一个物理连接，在该RWConnection创建的所有语句之间复用，close时归还
+    private Connection writeConn;
+    private Connection readConn;
+    private PhysicalDatasource readDs;
+    // readConn上创建的物理Statement，用于判断被替换下来后何时可以归还
+    private List<Statement> readStatements;
+    // 换到其它从库后被替换下来、其上还有未关闭的Statement(可能有未读完的结果集)的连接，每个从库最多一个，
+    // 其上的Statement都关闭后归还，切换回该从库时直接复用
+    private List<RetiredConnection> retiredConns;
+
+    // 最多保留的被替换下来的连接数，超过时强制归还最早的
+    private static final int MAX_RETIRED_CONNS = 4;
+
+    // readStatements超过这个数时先清理已经关闭的
+    private static final int STATEMENT_PRUNE_THRESHOLD = 8;
+
+    private static final class RetiredConnection {
+        final PhysicalDatasource ds;
+        final Connection conn;
+        final List<Statement> statements;
+
+        RetiredConnection(PhysicalDatasource ds, Connection conn, List<Statement> statements) {
+            this.ds = ds;
+            this.conn = conn;
+            this.statements = statements;
+        }
+    }
+
+    // 事务中固定使用的物理连接，autoCommit=false时第一条语句绑定，提交或回滚后解除
+    private Connection txConn;
+    private PhysicalDatasource txDs;
+
+    // 事务中写过的表和主键，提交或回滚后再失效一次缓存
+    private TransactionWrites txWrites;
+
     public RWConnection() {
         connId=System.currentTimeMillis();
     }
@@ -54,6 +99,14 @@ public class RWConnection implements Connection {
         this.holdability = 0;
         this.typeMap = null;
         this.realConn = null;
+        this.writeInTransaction = false;
+        this.writeConn = null;
+        this.readConn = null;
+        this.readDs = null;
+        this.readStatements = null;
+        this.retiredConns = null;
+        this.txConn = null;
+        this.txDs = null;
     }
 
     @Override
@@ -86,25 +139,286 @@ public class RWConnection implements Connection {
 
     @Override
     public void setAutoCommit(boolean autoCommit) throws SQLException {
+        if (autoCommit && !this.autoCommit) {
+            // 按jdbc的约定，事务中打开自动提交会提交当前事务
+            commit();
+        }
         this.autoCommit = autoCommit;
+        if (writeConn != null) {
+            writeConn.setAutoCommit(autoCommit);
+        }
+        if (readConn != null) {
+            readConn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * 获取指定物理库上的连接，主库和从库各自最多持有一个连接，第一次获取时初始化，之后的语句直接复用。
+     * 换到其它从库时，原来的从库连接上没有未关闭的Statement就立即归还，否则暂时保留
+     * 
+     * @param ds
+     * @param master
+     *            ds是否为主库
+     */
+    Connection acquireRealConn(PhysicalDatasource ds, boolean master) throws SQLException {
+        if (master) {
+            if (writeConn == null) {
+                writeConn = newRealConnection(ds);
+            }
+            realConn = writeConn;
+        } else {
+            if (readConn != null && readDs != ds) {
+                retireReadConn();
+            }
+            if (readConn == null) {
+                RetiredConnection retired = takeRetiredConn(ds);
+                if (retired != null) {
+                    readConn = retired.conn;
+                    readStatements = retired.statements;
+                } else {
+                    readConn = newRealConnection(ds);
+                    readStatements = new ArrayList<Statement>(2);
+                }
+                readDs = ds;
+            }
+            realConn = readConn;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Thread id={},invoke rwConnection$acquireRealConn method,realConn={}", Thread.currentThread()
+                    .getId(), realConn);
+        }
+        return realConn;
+    }
+
+    private void retireReadConn() {
+        if (retiredConns == null) {
+            retiredConns = new ArrayList<RetiredConnection>(2);
+        }
+        retiredConns.add(new RetiredConnection(readDs, readConn, readStatements));
+        readConn = null;
+        readDs = null;
+        readStatements = null;
+        releaseRetiredConns();
+        if (retiredConns.size() > MAX_RETIRED_CONNS) {
+            RetiredConnection oldest = retiredConns.remove(0);
+            log.warn("too many retired read connections, close the one of {} with open statements", oldest.ds
+                    .getName());
+            closeQuietly(oldest.conn, null);
+        }
+    }
+
+    /**
+     * 取出ds上被替换下来的连接复用，按当前的设置重新初始化
+     */
+    private RetiredConnection takeRetiredConn(PhysicalDatasource ds) throws SQLException {
+        if (retiredConns == null) {
+            return null;
+        }
+        for (int i = 0; i < retiredConns.size(); i++) {
+            RetiredConnection retired = retiredConns.get(i);
+            if (retired.ds == ds) {
+                retiredConns.remove(i);
+                if (retired.conn.isClosed()) {
+                    return null;
+                }
+                retired.conn.setAutoCommit(autoCommit);
+                retired.conn.setReadOnly(readOnly);
+                initRealConnection(retired.conn);
+                return retired;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 归还其上的Statement都已经关闭的被替换下来的连接，Statement关闭时调用
+     */
+    void releaseRetiredConns() {
+        if (retiredConns == null || retiredConns.isEmpty()) {
+            return;
+        }
+        for (int i = retiredConns.size() - 1; i >= 0; i--) {
+            RetiredConnection retired = retiredConns.get(i);
+            if (allClosed(retired.statements)) {
+                retiredConns.remove(i);
+                closeQuietly(retired.conn, null);
+            }
+        }
+    }
+
+    /**
+     * 记录在当前物理连接上创建的Statement，只跟踪从库连接
+     */
+    void trackStatement(Statement statement) {
+        if (realConn != readConn || readStatements == null) {
+            return;
+        }
+        if (readStatements.size() >= STATEMENT_PRUNE_THRESHOLD) {
+            for (int i = readStatements.size() - 1; i >= 0; i--) {
+                if (isClosed(readStatements.get(i))) {
+                    readStatements.remove(i);
+                }
+            }
+        }
+        readStatements.add(statement);
+    }
+
+    private static boolean allClosed(List<Statement> statements) {
+        for (Statement statement : statements) {
+            if (!isClosed(statement)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isClosed(Statement statement) {
+        try {
+            return statement.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private Connection newRealConnection(PhysicalDatasource ds) throws SQLException {
+        Connection con;
+        try {
+            con = ds.getConnection();
+        } catch (SQLException e) {
+            // 连不上或借用超时计入熔断器
+            ds.recordFailure(e);
+            throw e;
+        }
+        if (con == null) {
+            throw new SQLException(String.format("physical %s database can't connection", ds.getName()));
+        }
+        long start = System.nanoTime();
+        try {
+            initRealConnection(con);
+            ProxyMetrics.getInstance().recordBackend(ds.getName(), ProxyMetrics.Phase.INIT_CONNECTION,
+                    System.nanoTime() - start);
+        } catch (SQLException e) {
+            ds.recordFailure(e);
+            con.close();
+            throw e;
+        }
+        return con;
+    }
+
+    /**
+     * 当前持有的从库，后续的读在该从库仍可用时继续使用它
+     */
+    PhysicalDatasource getReadDataSource() {
+        return readDs;
+    }
+
+    /**
+     * 关闭自动提交后即处于事务中，事务内的语句不再逐条路由
+     */
+    boolean isInTransaction() {
+        return !this.autoCommit;
+    }
+
+    boolean isReadOnlyTransaction() {
+        return this.readOnly;
+    }
+
+    Connection getTransactionConn() {
+        return txConn;
+    }
+
+    PhysicalDatasource getTransactionDataSource() {
+        return txDs;
+    }
+
+    /**
+     * 事务的第一条语句执行时绑定物理连接，直到提交或回滚，事务内的其它语句都使用这个连接
+     */
+    Connection bindTransaction(PhysicalDatasource ds, boolean master) throws SQLException {
+        this.txConn = acquireRealConn(ds, master);
+        this.txDs = ds;
+        return txConn;
+    }
+
+    /**
+     * 事务内后续的语句直接使用已经绑定的连接
+     */
+    Connection useTransactionConn() {
+        this.realConn = txConn;
+        return txConn;
+    }
+
+    private void unbindTransaction() {
+        txConn = null;
+        txDs = null;
+        invalidateTransactionWrites();
+    }
+
+    /**
+     * 记录事务中写语句涉及的表和主键，参数含义见TransactionWrites.add
+     */
+    void addTransactionWrite(String[] tables, String rowTable, String[] keys) {
+        if (txWrites == null) {
+            txWrites = new TransactionWrites();
+        }
+        txWrites.add(tables, rowTable, keys);
+    }
+
+    private void invalidateTransactionWrites() {
+        if (txWrites != null) {
+            txWrites.invalidate(BaseService.getResultCache(), BaseService.getRowCache());
+        }
+    }
+
+    /**
+     * 路由到主库的语句执行之后调用，STICKY模式下记录写的时间；自动提交时立即记录主库的写入位置，否则等到提交之后
+     */
+    void afterWrite(Connection masterConn) {
+        if (BaseService.getReadConsistency() == Constant.ReadConsistency.STICKY) {
+            RouteSession.current().markWrite();
+        }
+        if (this.autoCommit) {
+            captureWritePosition(masterConn);
+        } else {
+            this.writeInTransaction = true;
+        }
+    }
+
+    /**
+     * 记录主库当前已执行的GTID集合，本会话之后的读只会到已经执行了这些事务的从库
+     */
+    private void captureWritePosition(Connection masterConn) {
+        if (masterConn == null || BaseService.getReadConsistency() != Constant.ReadConsistency.GTID) {
+            return;
+        }
+        try {
+            RouteSession.current().setWriteGtidSet(GtidSet.fetchExecuted(masterConn, 0));
+        } catch (SQLException e) {
+            log.warn("fetch master gtid_executed error", e);
+        }
     }
 
     @Override
     public void commit() throws SQLException {
-        if (realConn != null) {
-            realConn.commit();
+        if (writeConn != null && !writeConn.getAutoCommit()) {
+            writeConn.commit();
             if(log.isDebugEnabled()){
-                log.debug("Thread id={},invoke rwConnection$commit method,realConn={}",Thread.currentThread().getId(),realConn);
+                log.debug("Thread id={},invoke rwConnection$commit method,writeConn={}",Thread.currentThread().getId(),writeConn);
             }
         }
-        if (RWREAL_CONNECTION.get() != null){
-            RWREAL_CONNECTION.get().commit();
-            if(log.isDebugEnabled()){
-                log.debug("Thread id={},invoke rwConnection$commit method,localConn={}",Thread.currentThread().getId(),RWREAL_CONNECTION.get());
+        if (readConn != null && !readConn.getAutoCommit()) {
+            readConn.commit();
+        }
+        if (writeInTransaction) {
+            writeInTransaction = false;
+            if (BaseService.getReadConsistency() == Constant.ReadConsistency.STICKY) {
+                // 提交之后才开始复制，窗口从提交时算起
+                RouteSession.current().markWrite();
             }
+            captureWritePosition(writeConn);
         }
-           
-        
+        unbindTransaction();
+
         if(log.isDebugEnabled()){
             log.debug("Thread id={},invoke rwConnection$commit method",Thread.currentThread().getId());
         }
@@ -112,31 +426,50 @@ public class RWConnection implements Connection {
 
     @Override
     public void rollback() throws SQLException {
-        if (realConn != null) {
-            realConn.rollback();
+        writeInTransaction = false;
+        if (writeConn != null && !writeConn.getAutoCommit()) {
+            writeConn.rollback();
+        }
+        if (readConn != null && !readConn.getAutoCommit()) {
+            readConn.rollback();
         }
-        if (RWREAL_CONNECTION.get() != null)
-            RWREAL_CONNECTION.get().rollback();
+        unbindTransaction();
     }
     private static org.slf4j.Logger log = LoggerFactory.getLogger(RWConnection.class);
     @Override
     public void close() throws SQLException {
         this.closed = true;
-        if (realConn != null) {
-            realConn.close();
-        }
-        if (RWREAL_CONNECTION.get() != null) {
-            RWREAL_CONNECTION.get().close();
-            RWREAL_CONNECTION.remove();
+        SQLException error = null;
+        error = closeQuietly(writeConn, error);
+        error = closeQuietly(readConn, error);
+        if (retiredConns != null) {
+            for (RetiredConnection retired : retiredConns) {
+                error = closeQuietly(retired.conn, error);
+            }
         }
-        
         release();
-       /* if(RWDataSource.localRWConnection.get()!=null){
-            RWDataSource.localRWConnection.remove();
-        }*/
+        this.closed = true;
         if(log.isDebugEnabled()){
             log.debug("Thread id={},invoke rwConnection$close method",Thread.currentThread().getId());
         }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private SQLException closeQuietly(Connection conn, SQLException error) {
+        if (conn == null) {
+            return error;
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            if (error == null) {
+                return e;
+            }
+            error.setNextException(e);
+        }
+        return error;
     }
 
     private void initRealConnection(Connection con) throws SQLException {
@@ -212,6 +545,12 @@ public class RWConnection implements Connection {
     @Override
     public void setCatalog(String catalog) throws SQLException {
         this.catalog = catalog;
+        if (writeConn != null) {
+            writeConn.setCatalog(catalog);
+        }
+        if (readConn != null) {
+            readConn.setCatalog(catalog);
+        }
     }
 
     @Override
@@ -226,16 +565,34 @@ public class RWConnection implements Connection {
     @Override
     public void setHoldability(int holdability) throws SQLException {
         this.holdability = holdability;
+        if (writeConn != null) {
+            writeConn.setHoldability(holdability);
+        }
+        if (readConn != null) {
+            readConn.setHoldability(holdability);
+        }
     }
 
     @Override
     public void setReadOnly(boolean readOnly) throws SQLException {
         this.readOnly = readOnly;
+        if (writeConn != null) {
+            writeConn.setReadOnly(readOnly);
+        }
+        if (readConn != null) {
+            readConn.setReadOnly(readOnly);
+        }
     }
 
     @Override
     public void setTransactionIsolation(int level) throws SQLException {
         this.transactionIsolation = level;
+        if (writeConn != null) {
+            writeConn.setTransactionIsolation(level);
+        }
+        if (readConn != null) {
+            readConn.setTransactionIsolation(level);
+        }
     }
 
     @Override
@@ -249,8 +606,14 @@ public class RWConnection implements Connection {
     }
 
     @Override
-    public void setSchema(String schema) {
+    public void setSchema(String schema) throws SQLException {
         this.schema = schema;
+        if (writeConn != null) {
+            writeConn.setSchema(schema);
+        }
+        if (readConn != null) {
+            readConn.setSchema(schema);
+        }
     }
 
     @Override
@@ -258,19 +621,6 @@ public class RWConnection implements Connection {
         return this.closed;
     }
 
-    public static ThreadLocal<Connection> RWREAL_CONNECTION = new ThreadLocal<Connection>();
-
-    public void setRealConn(Connection realConn) throws SQLException {
-       /* if(log.isDebugEnabled()){
-            log.debug("Thread id={},invoke rwConnection$setRealConn method,realConn={},operateType={}",Thread.currentThread().getId(),
-                    realConn,operateType);
-        }*/
-        log.debug("Thread id={},invoke rwConnection$setRealConn method,realConn={}",Thread.currentThread().getId(),
-                realConn);
-        this.realConn = realConn;
-        initRealConnection(realConn);
-    }
-
     @Override
     public DatabaseMetaData getMetaData() throws SQLException {
         if (this.realConn != null) {
@@ -321,39 +671,31 @@ public class RWConnection implements Connection {
 
     @Override
     public void releaseSavepoint(Savepoint savepoint) throws SQLException {
-        /*
-         * if (this.realConn != null) { realConn.releaseSavepoint(savepoint); }
-         */
-        if (RWREAL_CONNECTION.get() != null)
-            RWREAL_CONNECTION.get().releaseSavepoint(savepoint);
+        if (this.txConn != null) {
+            txConn.releaseSavepoint(savepoint);
+        }
     }
 
     @Override
     public void rollback(Savepoint savepoint) throws SQLException {
-        /*
-         * if (this.realConn != null) { realConn.rollback(savepoint); }
-         */
-        if (RWREAL_CONNECTION.get() != null)
-            RWREAL_CONNECTION.get().rollback(savepoint);
+        if (this.txConn != null) {
+            txConn.rollback(savepoint);
+        }
     }
 
     @Override
     public Savepoint setSavepoint() throws SQLException {
-        /*
-         * if (this.realConn != null) { return realConn.setSavepoint(); }
-         */
-        if (RWREAL_CONNECTION.get() != null)
-            RWREAL_CONNECTION.get().setSavepoint();
+        if (this.txConn != null) {
+            return txConn.setSavepoint();
+        }
         throw SQLError.createSQLException("setSavepoint can't execute");
     }
 
     @Override
     public Savepoint setSavepoint(String name) throws SQLException {
-        /*
-         * if (this.realConn != null) { return realConn.setSavepoint(name); }
-         */
-        if (RWREAL_CONNECTION.get() != null)
-            RWREAL_CONNECTION.get().setSavepoint(name);
+        if (this.txConn != null) {
+            return txConn.setSavepoint(name);
+        }
         throw SQLError.createSQLException("setSavepoint can't execute");
     }
 
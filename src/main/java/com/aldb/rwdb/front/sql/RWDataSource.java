@@ -5,7 +5,11 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import javax.sql.DataSource;
@@ -13,8 +17,21 @@ import javax.sql.DataSource;
 import org.slf4j.LoggerFactory;
 
 import com.aldb.rwdb.BaseService;
+import com.aldb.rwdb.front.cache.CachePool;
+import com.aldb.rwdb.front.cache.CacheStatic;
+import com.aldb.rwdb.front.cache.ResultCache;
+import com.aldb.rwdb.front.cache.RowCache;
 import com.aldb.rwdb.front.keypool.BackendPool;
+import com.aldb.rwdb.front.keypool.ConnectionPool;
+import com.aldb.rwdb.front.keypool.DBHeartBeat;
+import com.aldb.rwdb.front.keypool.DBHeartBeatManager;
 import com.aldb.rwdb.front.keypool.PhysicalDatasource;
+import com.aldb.rwdb.front.keypool.ReplicationLagChecker;
+import com.aldb.rwdb.front.keypool.support.LoadBalanceFactory;
+import com.aldb.rwdb.front.monitor.ProxyMetrics;
+import com.aldb.rwdb.front.monitor.RouteAuditLog;
+import com.aldb.rwdb.front.route.RoutingScope;
+import com.aldb.rwdb.front.route.TableRouteRules;
 import com.aldb.rwdb.util.Constant;
 
 public class RWDataSource implements DataSource {
@@ -25,32 +42,360 @@ public class RWDataSource implements DataSource {
     private static org.slf4j.Logger log = LoggerFactory.getLogger(RWDataSource.class);
 
     /**
-     * 一主一从 对于多从，可以采用haproxy进行负载均衡的架构， 而对于多主，可以采用lvs(keepalive)形式进行主备
+     * 一主一从
      * 
      * @param dbType
      * @param masterDataSource
      * @param slaveDataSource
      */
     public RWDataSource(String dbType, DataSource masterDataSource, DataSource slaveDataSource) {
+        this(dbType, masterDataSource, Collections.singletonList(slaveDataSource));
+    }
+
+    /**
+     * 一主多从，读操作在存活的从库之间按负载均衡策略选择，对于多主，可以采用lvs(keepalive)形式进行主备
+     * 
+     * @param dbType
+     * @param masterDataSource
+     * @param slaveDataSources
+     */
+    public RWDataSource(String dbType, DataSource masterDataSource, List<DataSource> slaveDataSources) {
 
         log.info("mycat data source init....");
         if (dbType == null) {
             throw new RuntimeException("dbType is null ,please set it...");
         }
+        if (slaveDataSources == null || slaveDataSources.isEmpty()) {
+            throw new RuntimeException("slaveDataSources is empty ,please set it...");
+        }
         if (dbType.equalsIgnoreCase("mysql")) {
             dbType = "MySQL";
         }
         BaseService.setDbType(dbType);
-        // MycatHostConfig mconfig = new
-        // MycatHostConfig(Constant.RW.WRITE.name(), masterDataSource);
-        // putPhysicalDataSource(mconfig);
-        // mconfig = new MycatHostConfig(Constant.RW.READ.name(),
-        // slaveDataSource);
-        // putPhysicalDataSource(mconfig);
 
         putPhysicalDataSource(Constant.RW.WRITE.name(), masterDataSource);
-        putPhysicalDataSource(Constant.RW.READ.name(), slaveDataSource);
+        for (int i = 0; i < slaveDataSources.size(); i++) {
+            putPhysicalDataSource(Constant.getDataSourceKey(Constant.RW.READ.name(), i), slaveDataSources.get(i));
+        }
+
+    }
+
+    /**
+     * 一主多从，由jdbc url直接创建内置连接池，不再需要外部的连接池，主库和从库的连接池大小分别通过
+     * setWritePoolSize、setReadPoolSize设置
+     * 
+     * @param dbType
+     * @param masterUrl
+     * @param slaveUrls
+     * @param user
+     * @param password
+     */
+    public RWDataSource(String dbType, String masterUrl, List<String> slaveUrls, String user, String password) {
+        this(dbType, new ConnectionPool(Constant.RW.WRITE.name(), masterUrl, user, password), createReadPools(
+                slaveUrls, user, password));
+    }
+
+    private static List<DataSource> createReadPools(List<String> slaveUrls, String user, String password) {
+        if (slaveUrls == null) {
+            return null;
+        }
+        List<DataSource> pools = new ArrayList<DataSource>(slaveUrls.size());
+        for (int i = 0; i < slaveUrls.size(); i++) {
+            pools.add(new ConnectionPool(Constant.getDataSourceKey(Constant.RW.READ.name(), i), slaveUrls.get(i),
+                    user, password));
+        }
+        return pools;
+    }
+
+    private long heartBeatPeriod = 10000;
+    private int heartBeatTimeout = 3;
+    private int heartBeatMaxRetry = DBHeartBeat.DEFAULT_MAX_RETRY_COUNT;
+    private String heartBeatSql;
+    private String replicationLagSql;
+    private volatile DBHeartBeatManager heartBeatManager;
+
+    private boolean initialized;
+
+    /**
+     * 启动从库的心跳检测并创建行缓存，可作为spring的init-method
+     */
+    public synchronized void init() {
+        if (!initialized) {
+            initialized = true;
+            try {
+                rebuildRowCache();
+            } catch (SQLException e) {
+                throw new IllegalStateException("can't create row cache", e);
+            }
+        }
+        if (heartBeatManager == null && heartBeatPeriod > 0) {
+            String sql = heartBeatSql;
+            if (sql == null) {
+                sql = "oracle".equalsIgnoreCase(BaseService.getDbType()) ? "select 1 from dual" : "select 1";
+            }
+            heartBeatManager = new DBHeartBeatManager(heartBeatPeriod, heartBeatTimeout, heartBeatMaxRetry, sql);
+            if (BackendPool.getInstance().getMaxReplicationLag() > 0) {
+                heartBeatManager.setLagChecker(new ReplicationLagChecker(replicationLagSql));
+            }
+            heartBeatManager.setTrackGtid(BaseService.getReadConsistency() == Constant.ReadConsistency.GTID);
+            heartBeatManager.start();
+        }
+        if (ProxyMetrics.getInstance().isEnabled()) {
+            ProxyMetrics.getInstance().registerMBeans();
+        }
+    }
+
+    /**
+     * 停止心跳并释放心跳连接，可作为spring的destroy-method
+     */
+    public synchronized void close() {
+        ProxyMetrics.getInstance().unregisterMBeans();
+        RouteAuditLog.getInstance().stop();
+        initialized = false;
+        RowCache rowCache = BaseService.setRowCache(null);
+        if (rowCache != null) {
+            rowCache.close();
+        }
+        if (heartBeatManager != null) {
+            heartBeatManager.stop();
+            heartBeatManager = null;
+        }
+        for (PhysicalDatasource ds : BackendPool.getInstance().getDbMap().values()) {
+            ConnectionPool pool = ds.getConnectionPool();
+            if (pool != null) {
+                pool.close();
+            }
+        }
+    }
+
+    /**
+     * 内置连接池的主库连接数上限，默认10
+     */
+    public void setWritePoolSize(int writePoolSize) {
+        ConnectionPool pool = BackendPool.getInstance().getDataSouce(Constant.RW.WRITE.name()).getConnectionPool();
+        if (pool != null) {
+            pool.setMaxPoolSize(writePoolSize);
+        }
+    }
+
+    /**
+     * 内置连接池的每个从库的连接数上限，默认10
+     */
+    public void setReadPoolSize(int readPoolSize) {
+        for (Map.Entry<String, PhysicalDatasource> entry : BackendPool.getInstance().getDbMap().entrySet()) {
+            ConnectionPool pool = entry.getValue().getConnectionPool();
+            if (pool != null && entry.getKey().startsWith(Constant.RW.READ.name())) {
+                pool.setMaxPoolSize(readPoolSize);
+            }
+        }
+    }
+
+    /**
+     * 内置连接池借用连接的最长等待时间，毫秒，默认3000，超时抛出SQLTransientConnectionException
+     */
+    public void setPoolConnectionTimeout(long connectionTimeout) {
+        for (PhysicalDatasource ds : BackendPool.getInstance().getDbMap().values()) {
+            ConnectionPool pool = ds.getConnectionPool();
+            if (pool != null) {
+                pool.setConnectionTimeout(connectionTimeout);
+            }
+        }
+    }
+
+    /**
+     * 是否统计路由、获取连接、初始化连接和执行各阶段的耗时，默认开启，init()时以JMX MBean发布
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        ProxyMetrics.getInstance().setEnabled(metricsEnabled);
+    }
+
+    /**
+     * 路由审计日志的采样率，0到1，默认0不记录。采样到的语句由后台线程以INFO级别写到名为rwdb.route.audit的logger，
+     * 内容为sql模板指纹、路由结果、物理库和执行耗时
+     */
+    public void setRouteAuditSampleRate(double sampleRate) {
+        RouteAuditLog.getInstance().setSampleRate(sampleRate, sampleRate);
+    }
+
+    /**
+     * 读、写语句分别设置采样率，比如写全部记录，读只记录千分之一
+     */
+    public void setRouteAuditSampleRate(double readSampleRate, double writeSampleRate) {
+        RouteAuditLog.getInstance().setSampleRate(readSampleRate, writeSampleRate);
+    }
+
+    /**
+     * 心跳间隔，毫秒，默认10秒，0表示不做心跳
+     */
+    public void setHeartBeatPeriod(long heartBeatPeriod) {
+        this.heartBeatPeriod = heartBeatPeriod;
+    }
+
+    /**
+     * 心跳语句的超时时间，秒，默认3秒
+     */
+    public void setHeartBeatTimeout(int heartBeatTimeout) {
+        this.heartBeatTimeout = heartBeatTimeout;
+    }
+
+    /**
+     * 心跳连续超时多少次后摘除从库，连接异常时立即摘除。超时后在同一个心跳间隔内立即重试，不等待下一次心跳
+     */
+    public void setHeartBeatMaxRetry(int heartBeatMaxRetry) {
+        this.heartBeatMaxRetry = heartBeatMaxRetry;
+    }
+
+    public void setHeartBeatSql(String heartBeatSql) {
+        this.heartBeatSql = heartBeatSql;
+    }
+
+    /**
+     * 从库允许的最大复制延迟，毫秒，超过的从库不参与读，全部超过时读主库。0(默认)表示不考虑延迟。
+     * 延迟由心跳测量，需要调用init()
+     */
+    public void setMaxReplicationLag(long maxReplicationLag) {
+        BackendPool.getInstance().setMaxReplicationLag(maxReplicationLag);
+    }
+
+    /**
+     * 测量复制延迟的sql，默认为SHOW SLAVE STATUS的Seconds_Behind_Master，
+     * 也可以是查询心跳表的sql，第一列为时间戳或延迟秒数
+     */
+    public void setReplicationLagSql(String replicationLagSql) {
+        this.replicationLagSql = replicationLagSql;
+    }
+
+    /**
+     * 写之后读的一致性:none(默认)不保证;gtid记录本线程写入提交后主库的gtid_executed，
+     * 之后的读只到已经执行了这些事务的从库(从库的GTID由心跳定期刷新，读时不满足且超过gtidRefreshInterval
+     * 再按需读取一次)，没有则读主库; sticky本线程写之后的stickyMasterWindow毫秒内读主库
+     */
+    public void setReadConsistency(String readConsistency) {
+        BaseService.setReadConsistency(Constant.ReadConsistency.valueOf(readConsistency.toUpperCase()));
+        DBHeartBeatManager manager = heartBeatManager;
+        if (manager != null) {
+            manager.setTrackGtid(BaseService.getReadConsistency() == Constant.ReadConsistency.GTID);
+        }
+    }
+
+    /**
+     * gtid一致性下，从库已知的GTID集合不满足本会话的写入且早于该时间(毫秒，默认50)时，读之前重新读取一次
+     */
+    public void setGtidRefreshInterval(long gtidRefreshInterval) {
+        BackendPool.getInstance().setGtidRefreshInterval(gtidRefreshInterval);
+    }
+
+    /**
+     * sticky一致性下写之后读主库的时间窗口，毫秒，默认500
+     */
+    public void setStickyMasterWindow(long stickyMasterWindow) {
+        BaseService.setStickyMasterWindow(stickyMasterWindow);
+    }
+
+    /**
+     * 多个从库之间的负载均衡策略:roundRobin(默认)、weighted、leastActive、p2c、peakEwma(按执行耗时和活跃数选最快的库)
+     */
+    public void setLoadBalance(String loadBalance) {
+        BackendPool.getInstance().setLoadBalance(LoadBalanceFactory.create(loadBalance));
+    }
+
+    /**
+     * 从库的权重，按构造时从库的顺序一一对应，用于weighted策略
+     */
+    public void setReadWeights(List<Integer> weights) {
+        for (int i = 0; i < weights.size(); i++) {
+            PhysicalDatasource ds = BackendPool.getInstance().getDataSouce(
+                    Constant.getDataSourceKey(Constant.RW.READ.name(), i));
+            if (ds != null) {
+                ds.setWeight(weights.get(i));
+            }
+        }
+    }
+
+    /**
+     * 开启从库的熔断:连续失败、失败比例或慢调用比例超过阈值的从库立即停止接受读，经过一段时间后放行少量探测请求，
+     * 成功后恢复。只有连接、超时类的异常算失败
+     */
+    public void setCircuitBreakerEnabled(boolean circuitBreakerEnabled) {
+        BackendPool.getInstance().setCircuitBreakerEnabled(circuitBreakerEnabled);
+    }
+
+    /**
+     * 连续失败多少次熔断，默认5
+     */
+    public void setCircuitBreakerFailureThreshold(int failureThreshold) {
+        BackendPool.getInstance().getCircuitBreakerConfig().setFailureThreshold(failureThreshold);
+    }
+
+    /**
+     * 最近10秒(setCircuitBreakerWindowTime)内至少20次调用时，失败比例达到多少熔断，默认0.5
+     */
+    public void setCircuitBreakerFailureRate(double failureRate) {
+        BackendPool.getInstance().getCircuitBreakerConfig().setFailureRateThreshold(failureRate);
+    }
+
+    /**
+     * 执行超过多少毫秒算慢调用，慢调用比例达到setCircuitBreakerSlowCallRate(默认0.5)时熔断，默认0不统计
+     */
+    public void setCircuitBreakerSlowCallTime(long slowCallTime) {
+        BackendPool.getInstance().getCircuitBreakerConfig().setSlowCallTime(slowCallTime);
+    }
+
+    public void setCircuitBreakerSlowCallRate(double slowCallRate) {
+        BackendPool.getInstance().getCircuitBreakerConfig().setSlowCallRateThreshold(slowCallRate);
+    }
+
+    /**
+     * 统计失败比例的滑动窗口，毫秒，默认10000
+     */
+    public void setCircuitBreakerWindowTime(long windowTime) {
+        BackendPool.getInstance().getCircuitBreakerConfig().setWindowTime(windowTime);
+    }
+
+    /**
+     * 熔断多久之后开始探测，毫秒，默认5000
+     */
+    public void setCircuitBreakerOpenTime(long openTime) {
+        BackendPool.getInstance().getCircuitBreakerConfig().setOpenTime(openTime);
+    }
+
+    /**
+     * 从库组，组名到从库的序号(按构造时从库的顺序，从0开始)，供sql开头的路由提示/*+ rwdb:group=组名 *&#47;使用
+     */
+    public void setReplicaGroups(Map<String, List<Integer>> replicaGroups) {
+        Map<String, List<String>> groups = new HashMap<String, List<String>>();
+        for (Map.Entry<String, List<Integer>> entry : replicaGroups.entrySet()) {
+            List<String> names = new ArrayList<String>(entry.getValue().size());
+            for (Integer index : entry.getValue()) {
+                names.add(Constant.getDataSourceKey(Constant.RW.READ.name(), index));
+            }
+            groups.put(entry.getKey(), names);
+        }
+        BackendPool.getInstance().setReplicaGroups(groups);
+    }
+
+    /**
+     * 没有指定从库组的读所用的从库组，如oltp，使报表等其它组的从库不承担普通的读
+     */
+    public void setDefaultReplicaGroup(String defaultReplicaGroup) {
+        BackendPool.getInstance().setDefaultReplicaGroup(defaultReplicaGroup);
+    }
 
+    /**
+     * 组内没有可用从库时允许转到全部从库中选择的从库组，默认为空，即组内没有可用从库时读主库，不占用其它组的从库
+     */
+    public void setSpillReplicaGroups(List<String> spillReplicaGroups) {
+        BackendPool.getInstance().setSpillReplicaGroups(spillReplicaGroups);
+    }
+
+    /**
+     * 按表名的读路由规则，表名模式(*为通配符)到master、replica或group=组名，如audit_*->master、
+     * report_*->group=olap，按Map的迭代顺序匹配(spring的map为LinkedHashMap)，没有匹配的读按正常路由。
+     * 开启后每个读模板都要解析表名，建议同时开启路由缓存
+     */
+    public void setTableRoutes(Map<String, String> tableRoutes) {
+        BaseService.setTableRouteRules(tableRoutes == null || tableRoutes.isEmpty() ? null : new TableRouteRules(
+                tableRoutes));
     }
 
     // private List<String> specialWriteSql;
@@ -63,6 +408,173 @@ public class RWDataSource implements DataSource {
         }
     }
 
+    /**
+     * PreparedStatement批量执行单行的insert ... values (...)时，是否在代理中合并成insert ... values (...),(...)，
+     * 不依赖各数据库驱动自己的参数(如mysql的rewriteBatchedStatements)。默认false，oracle不合并;
+     * 需要返回自增主键时insert ignore和on duplicate key update不合并，按普通批量执行
+     */
+    public void setRewriteBatchedInserts(boolean rewriteBatchedInserts) {
+        BaseService.setRewriteBatchedInserts(rewriteBatchedInserts);
+    }
+
+    /**
+     * 合并后每条insert的大小上限，字节，默认1M，应小于数据库允许的最大包(mysql的max_allowed_packet)
+     */
+    public void setMaxBatchPacketSize(int maxBatchPacketSize) {
+        BaseService.setMaxBatchPacketSize(maxBatchPacketSize);
+    }
+
+    /**
+     * 路由缓存的条目上限，默认10000，设置为0则关闭路由缓存
+     */
+    public void setRouteCacheSize(int routeCacheSize) {
+        BaseService.setRouteCacheSize(routeCacheSize);
+    }
+
+    public CacheStatic getRouteCacheStatic() {
+        CachePool pool = BaseService.getRouteService().getCachePool();
+        return pool == null ? null : pool.getCacheStatic();
+    }
+
+    private List<String> resultCacheTemplates;
+    private long resultCacheMaxBytes = ResultCache.DEFAULT_MAX_BYTES;
+    private long resultCacheTtl = ResultCache.DEFAULT_TTL;
+    private long cacheReplicaLagTime = ResultCache.DEFAULT_REPLICA_LAG_TIME;
+
+    /**
+     * 需要缓存查询结果的sql，可以带常量或?，常量不同的同一模板都会缓存。不设置则不开启查询结果缓存。
+     * 经过本数据源执行的写语句会使涉及的表上的缓存失效，其它途径的写入只能等过期
+     */
+    public void setResultCacheTemplates(List<String> resultCacheTemplates) {
+        this.resultCacheTemplates = resultCacheTemplates;
+        rebuildResultCache();
+    }
+
+    /**
+     * 查询结果缓存占用的字节数上限(按结果集估算)，默认64M
+     */
+    public void setResultCacheMaxBytes(long resultCacheMaxBytes) {
+        this.resultCacheMaxBytes = resultCacheMaxBytes;
+        rebuildResultCache();
+    }
+
+    /**
+     * 查询结果的过期时间，毫秒，默认60秒，0为不过期。从库延迟期间写入缓存的旧数据最多保留这么久
+     */
+    public void setResultCacheTtl(long resultCacheTtl) {
+        this.resultCacheTtl = resultCacheTtl;
+        rebuildResultCache();
+    }
+
+    /**
+     * 表经过本数据源写入之后多少毫秒内，不用从库查到的结果填充查询结果缓存和行缓存，避免把从库还没有同步的旧数据缓存下来，
+     * 默认1秒，应不小于通常的复制延迟
+     */
+    public void setCacheReplicaLagTime(long cacheReplicaLagTime) throws SQLException {
+        this.cacheReplicaLagTime = cacheReplicaLagTime;
+        rebuildResultCache();
+        rowCacheChanged();
+    }
+
+    public CacheStatic getResultCacheStatic() {
+        ResultCache cache = BaseService.getResultCache();
+        return cache == null ? null : cache.getCacheStatic();
+    }
+
+    private void rebuildResultCache() {
+        if (resultCacheTemplates == null || resultCacheTemplates.isEmpty()) {
+            BaseService.setResultCache(null);
+            return;
+        }
+        BaseService.setResultCache(new ResultCache(resultCacheTemplates, resultCacheMaxBytes, resultCacheTtl,
+                cacheReplicaLagTime));
+    }
+
+    private Map<String, String> rowCacheTables;
+    private long rowCacheMaxBytes = RowCache.DEFAULT_MAX_BYTES;
+    private long rowCacheTtl = RowCache.DEFAULT_TTL;
+
+    /**
+     * 开启按主键行缓存的表，key为表名，value为单列主键的列名。select ... from 表 where 主键 = ?的单行结果缓存在堆外内存中，
+     * 经过本数据源按主键的update、delete只失效对应的主键，其它写语句使整张表失效。行缓存在init()时创建，
+     * init()之后修改行缓存的配置会重新创建
+     */
+    public void setRowCacheTables(Map<String, String> rowCacheTables) throws SQLException {
+        this.rowCacheTables = rowCacheTables;
+        rowCacheChanged();
+    }
+
+    /**
+     * 行缓存占用的堆外内存上限，默认256M，需要小于-XX:MaxDirectMemorySize
+     */
+    public void setRowCacheMaxBytes(long rowCacheMaxBytes) throws SQLException {
+        this.rowCacheMaxBytes = rowCacheMaxBytes;
+        rowCacheChanged();
+    }
+
+    /**
+     * 行缓存的过期时间，毫秒，默认60秒，0为不过期
+     */
+    public void setRowCacheTtl(long rowCacheTtl) throws SQLException {
+        this.rowCacheTtl = rowCacheTtl;
+        rowCacheChanged();
+    }
+
+    public CacheStatic getRowCacheStatic() {
+        RowCache cache = BaseService.getRowCache();
+        return cache == null ? null : cache.getCacheStatic();
+    }
+
+    /**
+     * init()之前只记录配置，避免每个setter都创建一次堆外内存
+     */
+    private synchronized void rowCacheChanged() throws SQLException {
+        if (initialized) {
+            rebuildRowCache();
+        }
+    }
+
+    /**
+     * 替换下来的行缓存由RowCache在正在访问它的语句结束之后关闭
+     */
+    private void rebuildRowCache() throws SQLException {
+        RowCache cache = null;
+        if (rowCacheTables != null && !rowCacheTables.isEmpty()) {
+            cache = new RowCache(rowCacheTables, rowCacheMaxBytes, rowCacheTtl, cacheReplicaLagTime);
+        }
+        RowCache old = BaseService.setRowCache(cache);
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    /**
+     * 当前线程上作用域内的语句都走主库，用try-with-resources关闭
+     */
+    public static RoutingScope forceMaster() {
+        return RoutingScope.forceMaster();
+    }
+
+    /**
+     * 当前线程上作用域内的读都走从库，写仍然走主库
+     */
+    public static RoutingScope forceReplica() {
+        return RoutingScope.forceReplica();
+    }
+
+    /**
+     * 当前线程上作用域内的读都走指定的从库组，写仍然走主库
+     */
+    public static RoutingScope forceReplicaGroup(String group) {
+        return RoutingScope.forceReplicaGroup(group);
+    }
+
+    /**
+     * 全局的实时模式，只读写库上存在的表的读也走主库，每条读都要解析
+     * 
+     * @deprecated 需要读主库的流程改用{@link #forceMaster()}限定在作用域内
+     */
+    @Deprecated
     public void setRealTime(String isTrue) {
         if ("true".equals(isTrue)) {
             Connection c = null;
@@ -151,9 +663,18 @@ public class RWDataSource implements DataSource {
         this.logWriter = out;
     }
 
+    /**
+     * 同时设置到每个内置连接池上，限制新建物理连接的时间
+     */
     @Override
     public void setLoginTimeout(int seconds) throws SQLException {
         this.loginTimeout = seconds;
+        for (PhysicalDatasource ds : BackendPool.getInstance().getDbMap().values()) {
+            ConnectionPool pool = ds.getConnectionPool();
+            if (pool != null) {
+                pool.setLoginTimeout(seconds);
+            }
+        }
     }
 
     @Override
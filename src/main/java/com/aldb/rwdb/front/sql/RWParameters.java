@@ -1,70 +1,453 @@
 package com.aldb.rwdb.front.sql;
 
-import java.lang.reflect.InvocationTargetException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
 import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.RowId;
 import java.sql.SQLException;
-import java.util.LinkedList;
-import java.util.List;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Calendar;
 
+import com.aldb.rwdb.front.cache.RowCache;
+
+/**
+ * 记录PreparedStatement上设置的参数，按参数位置存放在几个定长数组中：
+ * types存放设置方法对应的操作码，基本类型的值放在longs中(float/double存放其bit位)，
+ * 对象值放在objects中，Calendar/typeName放在extras中，sqlType之类的int参数放在ints中。
+ * 回放时直接switch到真正PreparedStatement的setter，不需要反射和装箱，数组在多次执行之间复用。
+ * 
+ */
 public class RWParameters {
 
-	private List<WarpParam> methodArgList;
+	static final byte NONE = 0;
+	static final byte NULL = 1;
+	static final byte NULL_TYPE_NAME = 2;
+	static final byte BOOLEAN = 3;
+	static final byte BYTE = 4;
+	static final byte SHORT = 5;
+	static final byte INT = 6;
+	static final byte LONG = 7;
+	static final byte FLOAT = 8;
+	static final byte DOUBLE = 9;
+	static final byte BIG_DECIMAL = 10;
+	static final byte STRING = 11;
+	static final byte NSTRING = 12;
+	static final byte BYTES = 13;
+	static final byte DATE = 14;
+	static final byte DATE_CAL = 15;
+	static final byte TIME = 16;
+	static final byte TIME_CAL = 17;
+	static final byte TIMESTAMP = 18;
+	static final byte TIMESTAMP_CAL = 19;
+	static final byte URL = 20;
+	static final byte REF = 21;
+	static final byte BLOB = 22;
+	static final byte BLOB_STREAM = 23;
+	static final byte BLOB_STREAM_LENGTH = 24;
+	static final byte CLOB = 25;
+	static final byte CLOB_READER = 26;
+	static final byte CLOB_READER_LENGTH = 27;
+	static final byte NCLOB = 28;
+	static final byte NCLOB_READER = 29;
+	static final byte NCLOB_READER_LENGTH = 30;
+	static final byte ARRAY = 31;
+	static final byte ROWID = 32;
+	static final byte SQLXML = 33;
+	static final byte OBJECT = 34;
+	static final byte OBJECT_TYPE = 35;
+	static final byte OBJECT_TYPE_SCALE = 36;
+	static final byte ASCII_STREAM = 37;
+	static final byte ASCII_STREAM_INT = 38;
+	static final byte ASCII_STREAM_LONG = 39;
+	static final byte BINARY_STREAM = 40;
+	static final byte BINARY_STREAM_INT = 41;
+	static final byte BINARY_STREAM_LONG = 42;
+	static final byte CHARACTER_STREAM = 43;
+	static final byte CHARACTER_STREAM_INT = 44;
+	static final byte CHARACTER_STREAM_LONG = 45;
+	static final byte NCHARACTER_STREAM = 46;
+	static final byte NCHARACTER_STREAM_LONG = 47;
+	static final byte UNICODE_STREAM = 48;
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private byte[] types;
+	private long[] longs;
+	private int[] ints;
+	private Object[] objects;
+	private Object[] extras;
+	private int maxIndex;
 
 	public RWParameters() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public RWParameters(int capacity) {
 		super();
-		methodArgList = new LinkedList<>();
+		allocate(capacity + 1);
+	}
+
+	private void allocate(int size) {
+		types = new byte[size];
+		longs = new long[size];
+		ints = new int[size];
+		objects = new Object[size];
+		extras = new Object[size];
+	}
+
+	private void ensureCapacity(int parameterIndex) throws SQLException {
+		if (parameterIndex < 1) {
+			throw new SQLException("Parameter index out of range: " + parameterIndex);
+		}
+		if (parameterIndex >= types.length) {
+			int size = Math.max(types.length << 1, parameterIndex + 1);
+			types = Arrays.copyOf(types, size);
+			longs = Arrays.copyOf(longs, size);
+			ints = Arrays.copyOf(ints, size);
+			objects = Arrays.copyOf(objects, size);
+			extras = Arrays.copyOf(extras, size);
+		}
+		if (parameterIndex > maxIndex) {
+			maxIndex = parameterIndex;
+		}
+	}
+
+	/**
+	 * 基本类型参数
+	 */
+	void setPrimitive(int parameterIndex, byte type, long value) throws SQLException {
+		ensureCapacity(parameterIndex);
+		types[parameterIndex] = type;
+		longs[parameterIndex] = value;
+		objects[parameterIndex] = null;
+		extras[parameterIndex] = null;
 	}
 
 	/**
-	 * @param methodName
-	 * @param classType
-	 * @param argInfo
+	 * 对象参数，extra为Calendar或typeName，intArg为sqlType，longArg为长度或scale
 	 */
-	public void set(String methodName, Class<?>[] classType, Object[] argInfo) {
-		methodArgList.add(new WarpParam(methodName, classType, argInfo));
+	void set(int parameterIndex, byte type, Object value, Object extra, int intArg, long longArg)
+			throws SQLException {
+		ensureCapacity(parameterIndex);
+		types[parameterIndex] = type;
+		objects[parameterIndex] = value;
+		extras[parameterIndex] = extra;
+		ints[parameterIndex] = intArg;
+		longs[parameterIndex] = longArg;
+	}
+
+	void set(int parameterIndex, byte type, Object value) throws SQLException {
+		set(parameterIndex, type, value, null, 0, 0);
 	}
 
 	public void clear() {
-		methodArgList.clear();
+		if (maxIndex > 0) {
+			Arrays.fill(types, 0, maxIndex + 1, NONE);
+			Arrays.fill(objects, 0, maxIndex + 1, null);
+			Arrays.fill(extras, 0, maxIndex + 1, null);
+			maxIndex = 0;
+		}
+	}
+
+	public int size() {
+		return maxIndex;
 	}
 
 	public void fillPreparedStatement(PreparedStatement ps) throws SQLException {
-		for (WarpParam e : methodArgList) {
-			try {
-				ps.getClass().getMethod(e.getMethodName(), e.getClassType())
-						.invoke(ps, e.getArgInfo());
-			} catch (IllegalAccessException | IllegalArgumentException
-					| InvocationTargetException | NoSuchMethodException
-					| SecurityException e1) {
-				e1.printStackTrace();
-			}
+		for (int i = 1; i <= maxIndex; i++) {
+			fill(ps, i, types[i], longs[i], ints[i], objects[i], extras[i]);
 		}
 	}
 
-	private class WarpParam {
-		private String methodName;
-		private Class<?>[] classType;
-		private Object[] argInfo;
+	/**
+	 * 把参数值追加到查询结果缓存的key中，只支持基本类型、字符串、数字和日期，有其它类型的参数时返回false，该次查询不缓存。
+	 * 每个值前面带上类型和长度，任何字符串值都不会与其它参数组合出相同的key；日期按毫秒值(Timestamp加纳秒)，
+	 * 带Calendar的日期还要加上Calendar的类型和时区，它们决定了发给数据库的值
+	 */
+	boolean appendCacheKey(StringBuilder key) {
+		for (int i = 1; i <= maxIndex; i++) {
+			key.append('\u0001').append(types[i]).append(':');
+			switch (types[i]) {
+			case NULL:
+			case NULL_TYPE_NAME:
+				break;
+			case BOOLEAN:
+			case BYTE:
+			case SHORT:
+			case INT:
+			case LONG:
+			case FLOAT:
+			case DOUBLE:
+				key.append(longs[i]);
+				break;
+			case BIG_DECIMAL:
+			case STRING:
+			case NSTRING:
+				appendKeyValue(key, objects[i]);
+				break;
+			case DATE_CAL:
+			case TIME_CAL:
+			case TIMESTAMP_CAL:
+				Calendar cal = (Calendar) extras[i];
+				if (cal != null) {
+					appendKeyValue(key, cal.getClass().getName());
+					appendKeyValue(key, cal.getTimeZone().getID());
+				}
+				appendDateKey(key, (java.util.Date) objects[i]);
+				break;
+			case DATE:
+			case TIME:
+			case TIMESTAMP:
+				appendDateKey(key, (java.util.Date) objects[i]);
+				break;
+			case OBJECT:
+				Object o = objects[i];
+				if (o instanceof java.util.Date) {
+					appendKeyValue(key, o.getClass().getName());
+					appendDateKey(key, (java.util.Date) o);
+					break;
+				}
+				if (!(o instanceof String || o instanceof Number || o instanceof Boolean)) {
+					return false;
+				}
+				appendKeyValue(key, o.getClass().getName());
+				appendKeyValue(key, o);
+				break;
+			default:
+				return false;
+			}
+		}
+		return true;
+	}
 
-		public WarpParam(String methodName, Class<?>[] classType,
-				Object[] argInfo) {
-			super();
-			this.methodName = methodName;
-			this.classType = classType;
-			this.argInfo = argInfo;
+	private static void appendKeyValue(StringBuilder key, Object value) {
+		if (value == null) {
+			key.append('-');
+			return;
 		}
+		String s = value.toString();
+		key.append(s.length()).append(':').append(s);
+	}
 
-		public Class<?>[] getClassType() {
-			return classType;
+	private static void appendDateKey(StringBuilder key, java.util.Date date) {
+		if (date == null) {
+			key.append('-');
+			return;
 		}
+		key.append(date.getTime());
+		if (date instanceof Timestamp) {
+			key.append('.').append(((Timestamp) date).getNanos());
+		}
+	}
 
-		public Object[] getArgInfo() {
-			return argInfo;
+	/**
+	 * 作为行缓存主键值的参数，转成RowCache.canonicalKey的规范形式，不是数字或字符串时返回null
+	 */
+	String getKeyValue(int parameterIndex) {
+		if (parameterIndex < 1 || parameterIndex > maxIndex) {
+			return null;
 		}
+		switch (types[parameterIndex]) {
+		case BYTE:
+		case SHORT:
+		case INT:
+		case LONG:
+			return Long.toString(longs[parameterIndex]);
+		case BIG_DECIMAL:
+			return RowCache.canonicalKey(objects[parameterIndex].toString(), true);
+		case STRING:
+		case NSTRING:
+			return (String) objects[parameterIndex];
+		case OBJECT:
+			Object o = objects[parameterIndex];
+			if (o instanceof Number) {
+				return RowCache.canonicalKey(o.toString(), true);
+			}
+			return o instanceof String ? (String) o : null;
+		default:
+			return null;
+		}
+	}
 
-		public String getMethodName() {
-			return methodName;
+	/**
+	 * 把第1到size()个参数依次复制到目标数组中从offset开始的位置，用于批量执行时保存每一行的参数
+	 */
+	void copyTo(byte[] toTypes, long[] toLongs, int[] toInts, Object[] toObjects, Object[] toExtras, int offset) {
+		System.arraycopy(types, 1, toTypes, offset, maxIndex);
+		System.arraycopy(longs, 1, toLongs, offset, maxIndex);
+		System.arraycopy(ints, 1, toInts, offset, maxIndex);
+		System.arraycopy(objects, 1, toObjects, offset, maxIndex);
+		System.arraycopy(extras, 1, toExtras, offset, maxIndex);
+	}
+
+	static void fill(PreparedStatement ps, int index, byte type, long l, int n, Object o, Object extra)
+			throws SQLException {
+		switch (type) {
+		case NONE:
+			break;
+		case NULL:
+			ps.setNull(index, n);
+			break;
+		case NULL_TYPE_NAME:
+			ps.setNull(index, n, (String) extra);
+			break;
+		case BOOLEAN:
+			ps.setBoolean(index, l != 0);
+			break;
+		case BYTE:
+			ps.setByte(index, (byte) l);
+			break;
+		case SHORT:
+			ps.setShort(index, (short) l);
+			break;
+		case INT:
+			ps.setInt(index, (int) l);
+			break;
+		case LONG:
+			ps.setLong(index, l);
+			break;
+		case FLOAT:
+			ps.setFloat(index, Float.intBitsToFloat((int) l));
+			break;
+		case DOUBLE:
+			ps.setDouble(index, Double.longBitsToDouble(l));
+			break;
+		case BIG_DECIMAL:
+			ps.setBigDecimal(index, (BigDecimal) o);
+			break;
+		case STRING:
+			ps.setString(index, (String) o);
+			break;
+		case NSTRING:
+			ps.setNString(index, (String) o);
+			break;
+		case BYTES:
+			ps.setBytes(index, (byte[]) o);
+			break;
+		case DATE:
+			ps.setDate(index, (Date) o);
+			break;
+		case DATE_CAL:
+			ps.setDate(index, (Date) o, (Calendar) extra);
+			break;
+		case TIME:
+			ps.setTime(index, (Time) o);
+			break;
+		case TIME_CAL:
+			ps.setTime(index, (Time) o, (Calendar) extra);
+			break;
+		case TIMESTAMP:
+			ps.setTimestamp(index, (Timestamp) o);
+			break;
+		case TIMESTAMP_CAL:
+			ps.setTimestamp(index, (Timestamp) o, (Calendar) extra);
+			break;
+		case URL:
+			ps.setURL(index, (URL) o);
+			break;
+		case REF:
+			ps.setRef(index, (Ref) o);
+			break;
+		case BLOB:
+			ps.setBlob(index, (Blob) o);
+			break;
+		case BLOB_STREAM:
+			ps.setBlob(index, (InputStream) o);
+			break;
+		case BLOB_STREAM_LENGTH:
+			ps.setBlob(index, (InputStream) o, l);
+			break;
+		case CLOB:
+			ps.setClob(index, (Clob) o);
+			break;
+		case CLOB_READER:
+			ps.setClob(index, (Reader) o);
+			break;
+		case CLOB_READER_LENGTH:
+			ps.setClob(index, (Reader) o, l);
+			break;
+		case NCLOB:
+			ps.setNClob(index, (NClob) o);
+			break;
+		case NCLOB_READER:
+			ps.setNClob(index, (Reader) o);
+			break;
+		case NCLOB_READER_LENGTH:
+			ps.setNClob(index, (Reader) o, l);
+			break;
+		case ARRAY:
+			ps.setArray(index, (Array) o);
+			break;
+		case ROWID:
+			ps.setRowId(index, (RowId) o);
+			break;
+		case SQLXML:
+			ps.setSQLXML(index, (SQLXML) o);
+			break;
+		case OBJECT:
+			ps.setObject(index, o);
+			break;
+		case OBJECT_TYPE:
+			ps.setObject(index, o, n);
+			break;
+		case OBJECT_TYPE_SCALE:
+			ps.setObject(index, o, n, (int) l);
+			break;
+		case ASCII_STREAM:
+			ps.setAsciiStream(index, (InputStream) o);
+			break;
+		case ASCII_STREAM_INT:
+			ps.setAsciiStream(index, (InputStream) o, (int) l);
+			break;
+		case ASCII_STREAM_LONG:
+			ps.setAsciiStream(index, (InputStream) o, l);
+			break;
+		case BINARY_STREAM:
+			ps.setBinaryStream(index, (InputStream) o);
+			break;
+		case BINARY_STREAM_INT:
+			ps.setBinaryStream(index, (InputStream) o, (int) l);
+			break;
+		case BINARY_STREAM_LONG:
+			ps.setBinaryStream(index, (InputStream) o, l);
+			break;
+		case CHARACTER_STREAM:
+			ps.setCharacterStream(index, (Reader) o);
+			break;
+		case CHARACTER_STREAM_INT:
+			ps.setCharacterStream(index, (Reader) o, (int) l);
+			break;
+		case CHARACTER_STREAM_LONG:
+			ps.setCharacterStream(index, (Reader) o, l);
+			break;
+		case NCHARACTER_STREAM:
+			ps.setNCharacterStream(index, (Reader) o);
+			break;
+		case NCHARACTER_STREAM_LONG:
+			ps.setNCharacterStream(index, (Reader) o, l);
+			break;
+		case UNICODE_STREAM:
+			setUnicodeStream(ps, index, (InputStream) o, (int) l);
+			break;
+		default:
+			throw new SQLException("unknown parameter type " + type + " at index " + index);
 		}
+	}
 
+	@SuppressWarnings("deprecation")
+	private static void setUnicodeStream(PreparedStatement ps, int index, InputStream x, int length)
+			throws SQLException {
+		ps.setUnicodeStream(index, x, length);
 	}
-}
\ No newline at end of file
+}
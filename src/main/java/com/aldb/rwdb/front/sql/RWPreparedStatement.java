@@ -5,8 +5,10 @@ import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.Array;
+import java.sql.BatchUpdateException;
 import java.sql.Blob;
 import java.sql.Clob;
+import java.sql.Connection;
 import java.sql.Date;
 import java.sql.NClob;
 import java.sql.ParameterMetaData;
@@ -20,9 +22,22 @@ import java.sql.SQLXML;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
 
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
+import com.aldb.rwdb.BaseService;
+import com.aldb.rwdb.front.cache.RowCache;
+import com.aldb.rwdb.front.route.PrimaryKeyCondition;
+import com.aldb.rwdb.front.route.RouteResult;
+import com.aldb.rwdb.front.route.RouteSession;
 import com.aldb.rwdb.front.sql.error.SQLError;
+import com.aldb.rwdb.util.MultiRowInsertTemplate;
+import com.aldb.rwdb.util.SQLNormalizer;
 
 /**
  * 代理PreparedStatement,负责对预处理方式进行sql分析,获取到真实的connection
@@ -30,9 +45,21 @@ import com.aldb.rwdb.front.sql.error.SQLError;
  */
 public class RWPreparedStatement extends RWStatement implements PreparedStatement {
 
-    private StringBuffer sb; // 这个sql语句，会逐步被更新，然后用于sql拦截解析，
     private RWParameters parameters; // 这个是对于preparement进行修改的参数记录
-    private String originalSql; // 而这个sql语句，会保存原始的模样，用于传参给真正的preparement
+    private String originalSql; // 原始的带?的sql语句，既用于路由解析，也用于传参给真正的preparement
+    private RouteResult routeResult; // 同一个模板只路由一次，之后的执行直接复用
+    private int[] placeholderPositions; // 行缓存取主键值时用到，第一次用到时计算
+
+    // realStat创建时所在的物理连接，连接池返回的一般是代理，realStat.getConnection()得到的不一定是同一个对象
+    private Connection realStatConn;
+
+    private RWBatchParameters batch; // addBatch保存的每一行参数，第一次addBatch时创建
+
+    // 合并成多行insert时使用的模板，第一次合并时解析，不是单行insert时为null
+    private MultiRowInsertTemplate insertTemplate;
+    private boolean insertTemplateParsed;
+    // 合并执行的批量中各块返回的自增主键
+    private ResultSet batchGeneratedKeys;
 
     // 以下常量对应connection 中构建preparedStatement的那6个方法，目的是1-1对应
     static final int CREATE_PS_METHOD_BY_CON_S = 21;
@@ -49,7 +76,6 @@ public class RWPreparedStatement extends RWStatement implements PreparedStatemen
 
     public RWPreparedStatement(String sql, RWConnection conn) {
         super(conn);
-        this.sb = new StringBuffer(sql);
         this.originalSql = sql;
         this.parameters = new RWParameters();
         super.createMethodByCon = RWPreparedStatement.CREATE_PS_METHOD_BY_CON_S;
@@ -89,56 +115,83 @@ public class RWPreparedStatement extends RWStatement implements PreparedStatemen
         super.createMethodByCon = RWPreparedStatement.CREATE_PS_METHOD_BY_CON_S_I_I_I;
     }
 
-    private int searchIndex(int parameterIndex) {
-        int index = 0;
-        for (int i = 0; i <= parameterIndex; i++) {
-            index = this.sb.indexOf("?", index);
+    /**
+     * 路由只依赖于sql模板本身(语句类型、表名)，与参数值无关，所以按模板路由一次并记住结果；
+     * RoutingScope内的路由结果不记住，离开作用域后恢复正常路由
+     */
+    @Override
+    protected RouteResult route(String sql) throws SQLException {
+        if (RouteSession.current().getScopeTarget() != null) {
+            return super.route(sql);
         }
-        return index;
-    }
-
-    private void replaceStrBuffer(int parameterIndex, Object strObj) {
-        int strIndex = searchIndex(parameterIndex);
-        this.sb = this.sb.replace(strIndex, strIndex + 1, warpParameter(strObj.toString()));
-    }
-
-    private String warpParameter(String param) {
-        return String.format("'%s'", param);
+        if (this.routeResult == null) {
+            this.routeResult = super.route(sql);
+        }
+        return this.routeResult;
     }
 
-    @Override
-    protected void createStatements(String sql) throws SQLException {
+    /**
+     * 按创建本语句时的方式在当前的物理连接上预编译sql
+     */
+    private PreparedStatement prepareRealStatement(String sql) throws SQLException {
+        Connection conn = fakeConn.getRealConn();
+        PreparedStatement ps = null;
         switch (this.createMethodByCon) {
         case CREATE_PS_METHOD_BY_CON_S:
-            realStat = fakeConn.getRealConn().prepareStatement(originalSql);
+            ps = conn.prepareStatement(sql);
             break;
         case CREATE_PS_METHOD_BY_CON_S_I:
-            realStat = fakeConn.getRealConn().prepareStatement(originalSql, autoGeneratedKeys);
+            ps = conn.prepareStatement(sql, autoGeneratedKeys);
             break;
         case CREATE_PS_METHOD_BY_CON_S_$I:
-            realStat = fakeConn.getRealConn().prepareStatement(originalSql, columnIndexes);
+            ps = conn.prepareStatement(sql, columnIndexes);
             break;
         case CREATE_PS_METHOD_BY_CON_S_$S:
-            realStat = fakeConn.getRealConn().prepareStatement(originalSql, columnNames);
+            ps = conn.prepareStatement(sql, columnNames);
             break;
         case CREATE_PS_METHOD_BY_CON_S_I_I:
-            realStat = fakeConn.getRealConn().prepareStatement(originalSql, resultSetType, resultSetConcurrency);
+            ps = conn.prepareStatement(sql, resultSetType, resultSetConcurrency);
             break;
         case CREATE_PS_METHOD_BY_CON_S_I_I_I:
-            realStat = fakeConn.getRealConn().prepareStatement(originalSql, resultSetType, resultSetConcurrency,
-                    resultSetHoldability);
+            ps = conn.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
             break;
         }
-        if (realStat == null) {
+        if (ps == null) {
             throw new SQLException("No real PreparedStatement exist");
         }
+        return ps;
+    }
+
+    @Override
+    protected void createStatements(String sql) throws SQLException {
+        this.batchGeneratedKeys = null;
+        // sql不变，还在同一个物理连接上时直接复用已经预编译的语句
+        if (realStat != null && realStatConn == fakeConn.getRealConn() && !realStat.isClosed()) {
+            PreparedStatement ps = (PreparedStatement) realStat;
+            ps.clearParameters();
+            this.parameters.fillPreparedStatement(ps);
+            return;
+        }
+        closeRealStatement();
+        realStat = prepareRealStatement(originalSql);
+        this.realStatConn = fakeConn.getRealConn();
+        fakeConn.trackStatement(realStat);
         this.parameters.fillPreparedStatement((PreparedStatement) realStat);
     }
 
     @Override
     protected void reset() {
         this.realStat = null;
+        this.realStatConn = null;
+        this.batch = null;
+        this.insertTemplate = null;
+        this.insertTemplateParsed = false;
+        this.batchGeneratedKeys = null;
+        this.physicalDs = null;
+        this.writeRoute = false;
         this.originalSql = null;
+        this.routeResult = null;
+        this.placeholderPositions = null;
         this.fakeConn = null;
         this.autoGeneratedKeys = Statement.NO_GENERATED_KEYS;
         this.columnIndexes = null;
@@ -159,34 +212,304 @@ public class RWPreparedStatement extends RWStatement implements PreparedStatemen
 
     @Override
     public ResultSet executeQuery() throws SQLException {
-        prepare(this.sb.toString());
+        RouteResult rrs = routeForCache(this.originalSql);
+        ResultSet cached = executeCachedQuery(this.originalSql, rrs);
+        if (cached != null) {
+            return cached;
+        }
+        prepareQuery(this.originalSql, rrs);
+        beginExecute();
+        try {
+            return ((PreparedStatement) realStat).executeQuery();
+        } catch (SQLException e) {
+            throw executeFailed(e);
+        } finally {
+            endExecute();
+        }
+    }
+
+    @Override
+    protected ResultSet executeRealQuery(String sql) throws SQLException {
         return ((PreparedStatement) realStat).executeQuery();
     }
 
+    /**
+     * sql模板加上各参数的值，有不能作为key的参数时不缓存
+     */
+    @Override
+    protected String resultCacheKey(String sql) {
+        StringBuilder key = new StringBuilder(sql);
+        return parameters.appendCacheKey(key) ? key.toString() : null;
+    }
+
+    /**
+     * 主键的值可能是sql中的常量，也可能是参数
+     */
+    @Override
+    protected String[] resolveKeyValues(String sql, PrimaryKeyCondition condition) {
+        int[] ordinals = condition.getOrdinals();
+        String[] keys = new String[ordinals.length];
+        if (ordinals.length == 0) {
+            return keys;
+        }
+        if (placeholderPositions == null) {
+            placeholderPositions = SQLNormalizer.placeholderPositions(originalSql);
+        }
+        for (int i = 0; i < ordinals.length; i++) {
+            if (ordinals[i] >= placeholderPositions.length) {
+                return null;
+            }
+            int position = placeholderPositions[ordinals[i]];
+            String literal = SQLNormalizer.literalAt(originalSql, position);
+            if (literal != null) {
+                keys[i] = RowCache.canonicalKey(literal, Character.isDigit(originalSql.charAt(position)));
+                continue;
+            }
+            // 是第几个参数
+            int parameterIndex = 0;
+            for (int j = 0; j <= ordinals[i]; j++) {
+                if (originalSql.charAt(placeholderPositions[j]) == '?') {
+                    parameterIndex++;
+                }
+            }
+            keys[i] = parameters.getKeyValue(parameterIndex);
+            if (keys[i] == null) {
+                return null;
+            }
+        }
+        return keys;
+    }
+
     @Override
     public int executeUpdate() throws SQLException {
-        prepare(this.sb.toString());
-        return ((PreparedStatement) realStat).executeUpdate();
+        prepare(this.originalSql);
+        beginExecute();
+        try {
+            return ((PreparedStatement) realStat).executeUpdate();
+        } catch (SQLException e) {
+            throw executeFailed(e);
+        } finally {
+            endExecute();
+        }
     }
 
     @Override
     public boolean execute() throws SQLException {
-        prepare(this.sb.toString());
-        return ((PreparedStatement) realStat).execute();
+        prepare(this.originalSql);
+        beginExecute();
+        try {
+            return ((PreparedStatement) realStat).execute();
+        } catch (SQLException e) {
+            throw executeFailed(e);
+        } finally {
+            endExecute();
+        }
     }
 
     @Override
     public void clearParameters() throws SQLException {
-        if (realStat == null) {
-            throw SQLError.createSQLException("no real Statement exist");
-        }
         this.parameters.clear();
-        ((PreparedStatement) realStat).clearParameters();
+        if (realStat != null) {
+            ((PreparedStatement) realStat).clearParameters();
+        }
     }
 
     @Override
     public void addBatch() throws SQLException {
-        throw SQLError.notImplemented();
+        if (batch == null) {
+            batch = new RWBatchParameters();
+        }
+        batch.addRow(parameters);
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        throw SQLError.createSQLException("addBatch(String) can't be called on PreparedStatement");
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        if (batch != null) {
+            batch.clear();
+        }
+    }
+
+    /**
+     * 整批只路由一次到主库，每一行的参数依次设置到真正的PreparedStatement上并addBatch，最后一次性执行
+     */
+    @Override
+    public int[] executeBatch() throws SQLException {
+        if (batch == null || batch.size() == 0) {
+            return new int[0];
+        }
+        try {
+            prepareBatch(this.originalSql);
+            if (batch.size() > 1 && BaseService.isRewriteBatchedInserts()) {
+                MultiRowInsertTemplate template = getInsertTemplate();
+                // 需要自增主键时只合并普通insert，其它语句的主键与批量中的行对应不上
+                if (template != null && template.getParameterCount() == batch.getWidth()
+                        && (template.isPlain() || !isReturnGeneratedKeys())) {
+                    int[] counts = executeMultiRowInsert(template);
+                    if (counts != null) {
+                        return counts;
+                    }
+                }
+            }
+            PreparedStatement ps = (PreparedStatement) realStat;
+            for (int row = 0; row < batch.size(); row++) {
+                batch.fillPreparedStatement(ps, row, 0);
+                ps.addBatch();
+            }
+            beginExecute();
+            try {
+                return ps.executeBatch();
+            } catch (SQLException e) {
+                throw executeFailed(e);
+            } finally {
+                endExecute();
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+
+    /**
+     * 把批量中的多行合并成若干条多行insert执行，每条语句的估算大小不超过maxBatchPacketSize，参数个数不超过数据库的上限。
+     * 有无法估算大小的参数(流、lob)时返回null，由调用方按普通批量执行
+     */
+    private int[] executeMultiRowInsert(MultiRowInsertTemplate template) throws SQLException {
+        int rows = batch.size();
+        int width = batch.getWidth();
+        int maxPacketSize = BaseService.getMaxBatchPacketSize();
+        int maxRows = Math.max(1, Math.min(maxMultiRowInsertRows(), maxStatementParameters() / width));
+        List<Integer> chunkEnds = new ArrayList<Integer>();
+        int chunkStart = 0;
+        long chunkSize = template.getBaseLength();
+        for (int row = 0; row < rows; row++) {
+            int rowSize = batch.estimateSize(row);
+            if (rowSize < 0) {
+                return null;
+            }
+            rowSize += template.getRowLength();
+            if (row > chunkStart && (chunkSize + rowSize > maxPacketSize || row - chunkStart >= maxRows)) {
+                chunkEnds.add(row);
+                chunkStart = row;
+                chunkSize = template.getBaseLength();
+            }
+            chunkSize += rowSize;
+        }
+        chunkEnds.add(rows);
+
+        boolean returnKeys = isReturnGeneratedKeys();
+        CachedRowSet generatedKeys = null;
+        int[] counts = new int[rows];
+        int done = 0;
+        PreparedStatement ps = null;
+        int psRows = 0;
+        beginExecute();
+        try {
+            for (int end : chunkEnds) {
+                int n = end - done;
+                // 大小相同的块复用同一个预编译语句
+                if (n != psRows) {
+                    if (ps != null) {
+                        ps.close();
+                    }
+                    ps = prepareRealStatement(template.build(n));
+                    psRows = n;
+                } else {
+                    ps.clearParameters();
+                }
+                for (int row = done; row < end; row++) {
+                    batch.fillPreparedStatement(ps, row, (row - done) * width);
+                }
+                int count = ps.executeUpdate();
+                Arrays.fill(counts, done, end, count == n ? 1 : Statement.SUCCESS_NO_INFO);
+                if (returnKeys) {
+                    generatedKeys = appendGeneratedKeys(generatedKeys, ps.getGeneratedKeys());
+                }
+                done = end;
+            }
+        } catch (SQLException e) {
+            executeFailed(e);
+            throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), Arrays.copyOf(counts,
+                    done), e);
+        } finally {
+            if (ps != null) {
+                ps.close();
+            }
+            endExecute();
+        }
+        if (generatedKeys != null) {
+            generatedKeys.beforeFirst();
+        }
+        this.batchGeneratedKeys = generatedKeys;
+        return counts;
+    }
+
+    /**
+     * 各块的自增主键依次追加到同一个结果集中，顺序与批量中的行一致
+     */
+    private static CachedRowSet appendGeneratedKeys(CachedRowSet keys, ResultSet rs) throws SQLException {
+        try {
+            if (keys == null) {
+                keys = RowSetProvider.newFactory().createCachedRowSet();
+                keys.populate(rs);
+                return keys;
+            }
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                keys.last();
+                keys.moveToInsertRow();
+                for (int i = 1; i <= columns; i++) {
+                    keys.updateObject(i, rs.getObject(i));
+                }
+                keys.insertRow();
+                keys.moveToCurrentRow();
+            }
+            return keys;
+        } finally {
+            rs.close();
+        }
+    }
+
+    private boolean isReturnGeneratedKeys() {
+        switch (this.createMethodByCon) {
+        case CREATE_PS_METHOD_BY_CON_S_I:
+            return autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS;
+        case CREATE_PS_METHOD_BY_CON_S_$I:
+        case CREATE_PS_METHOD_BY_CON_S_$S:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private MultiRowInsertTemplate getInsertTemplate() {
+        if (!insertTemplateParsed) {
+            // oracle不支持insert ... values (...),(...)
+            if (!"oracle".equalsIgnoreCase(BaseService.getDbType())) {
+                insertTemplate = MultiRowInsertTemplate.parse(originalSql);
+            }
+            insertTemplateParsed = true;
+        }
+        return insertTemplate;
+    }
+
+    private static int maxStatementParameters() {
+        return "sqlserver".equalsIgnoreCase(BaseService.getDbType()) ? 2100 : 32767;
+    }
+
+    private static int maxMultiRowInsertRows() {
+        return "sqlserver".equalsIgnoreCase(BaseService.getDbType()) ? 1000 : Integer.MAX_VALUE;
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        if (batchGeneratedKeys != null) {
+            return batchGeneratedKeys;
+        }
+        return super.getGeneratedKeys();
     }
 
     @Override
@@ -205,303 +528,242 @@ public class RWPreparedStatement extends RWStatement implements PreparedStatemen
         return ((PreparedStatement) realStat).getMetaData();
     }
 
-    /*在PreparedStatement设置参数这个处理上所有的方法思路都是一样的，首先将参数接收替换掉预处理的sql中，
-     * 然后用parameters将 设置方法名，参数类型，及参数值进行存储,在获取路由结果之后，通过回调将参数设置给真正的preparedstatement,
-     * 原因是构造器入口时就作路由是不准确的，如果只是读写区分在构造器是获取sql就可以路由，这种错误概率不是很高，但是
-     * 如果需要精准的路由所以需要获取完整的sql语句，所以才有了下面设置参数方法包装
+    /*在PreparedStatement设置参数这个处理上所有的方法思路都是一样的，用parameters按参数位置记录操作码及参数值,
+     * 在获取路由结果之后，再由parameters直接回放到真正的preparedstatement。
+     * 路由是基于带?的原始sql模板进行的，参数值不参与路由，所以设置参数时不再改写sql
      * 
      */
     @Override
     public void setNull(int parameterIndex, int sqlType) throws SQLException {
-        int strIndex = searchIndex(parameterIndex);
-        this.sb = this.sb.replace(strIndex, strIndex + 1, "NULL");
-        parameters.set("setNull", new Class<?>[] { int.class, int.class }, new Object[] { parameterIndex, sqlType });
+        parameters.set(parameterIndex, RWParameters.NULL, null, null, sqlType, 0);
     }
 
     @Override
     public void setBoolean(int parameterIndex, boolean x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setBoolean", new Class<?>[] { int.class, boolean.class }, new Object[] { parameterIndex, x });
+        parameters.setPrimitive(parameterIndex, RWParameters.BOOLEAN, x ? 1 : 0);
     }
 
     @Override
     public void setByte(int parameterIndex, byte x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setByte", new Class<?>[] { int.class, byte.class }, new Object[] { parameterIndex, x });
+        parameters.setPrimitive(parameterIndex, RWParameters.BYTE, x);
     }
 
     @Override
     public void setShort(int parameterIndex, short x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setShort", new Class<?>[] { int.class, short.class }, new Object[] { parameterIndex, x });
+        parameters.setPrimitive(parameterIndex, RWParameters.SHORT, x);
     }
 
     @Override
     public void setInt(int parameterIndex, int x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setInt", new Class<?>[] { int.class, int.class }, new Object[] { parameterIndex, x });
+        parameters.setPrimitive(parameterIndex, RWParameters.INT, x);
     }
 
     @Override
     public void setLong(int parameterIndex, long x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setLong", new Class<?>[] { int.class, long.class }, new Object[] { parameterIndex, x });
+        parameters.setPrimitive(parameterIndex, RWParameters.LONG, x);
     }
 
     @Override
     public void setFloat(int parameterIndex, float x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setFloat", new Class<?>[] { int.class, float.class }, new Object[] { parameterIndex, x });
+        parameters.setPrimitive(parameterIndex, RWParameters.FLOAT, Float.floatToRawIntBits(x));
     }
 
     @Override
     public void setDouble(int parameterIndex, double x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setDouble", new Class<?>[] { int.class, double.class }, new Object[] { parameterIndex, x });
+        parameters.setPrimitive(parameterIndex, RWParameters.DOUBLE, Double.doubleToRawLongBits(x));
     }
 
     @Override
     public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setBigDecimal", new Class<?>[] { int.class, BigDecimal.class }, new Object[] { parameterIndex,
-                x });
+        parameters.set(parameterIndex, RWParameters.BIG_DECIMAL, x);
     }
 
     @Override
     public void setString(int parameterIndex, String x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setString", new Class<?>[] { int.class, String.class }, new Object[] { parameterIndex, x });
-
+        parameters.set(parameterIndex, RWParameters.STRING, x);
     }
 
     @Override
     public void setBytes(int parameterIndex, byte[] x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setBytes", new Class<?>[] { int.class, byte[].class }, new Object[] { parameterIndex, x });
+        parameters.set(parameterIndex, RWParameters.BYTES, x);
     }
 
     @Override
     public void setDate(int parameterIndex, Date x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setDate", new Class<?>[] { int.class, Date.class }, new Object[] { parameterIndex, x });
+        parameters.set(parameterIndex, RWParameters.DATE, x);
     }
 
     @Override
     public void setTime(int parameterIndex, Time x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setTime", new Class<?>[] { int.class, Time.class }, new Object[] { parameterIndex, x });
+        parameters.set(parameterIndex, RWParameters.TIME, x);
     }
 
     @Override
     public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setTimestamp", new Class<?>[] { int.class, Timestamp.class },
-                new Object[] { parameterIndex, x });
-
+        parameters.set(parameterIndex, RWParameters.TIMESTAMP, x);
     }
 
     public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setDate", new Class<?>[] { int.class, Date.class, Calendar.class }, new Object[] {
-                parameterIndex, x, cal });
+        parameters.set(parameterIndex, RWParameters.DATE_CAL, x, cal, 0, 0);
     }
 
     public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setTime", new Class<?>[] { int.class, Time.class, Calendar.class }, new Object[] {
-                parameterIndex, x, cal });
+        parameters.set(parameterIndex, RWParameters.TIME_CAL, x, cal, 0, 0);
     }
 
     public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setTime", new Class<?>[] { int.class, Timestamp.class, Calendar.class }, new Object[] {
-                parameterIndex, x, cal });
+        parameters.set(parameterIndex, RWParameters.TIMESTAMP_CAL, x, cal, 0, 0);
     }
 
     @Override
     public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
-        int strIndex = searchIndex(parameterIndex);
-        this.sb = this.sb.replace(strIndex, strIndex + 1, "NULL");
-        parameters.set("setNull", new Class<?>[] { int.class, int.class, String.class }, new Object[] { parameterIndex,
-                sqlType, typeName });
+        parameters.set(parameterIndex, RWParameters.NULL_TYPE_NAME, null, typeName, sqlType, 0);
     }
 
     @Override
     public void setURL(int parameterIndex, URL x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setNull", new Class<?>[] { int.class, URL.class }, new Object[] { parameterIndex, x });
+        parameters.set(parameterIndex, RWParameters.URL, x);
     }
 
     @Override
     public void setRef(int parameterIndex, Ref x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setRef", new Class<?>[] { int.class, Ref.class }, new Object[] { parameterIndex, x });
+        parameters.set(parameterIndex, RWParameters.REF, x);
     }
 
     @Override
     public void setBlob(int parameterIndex, Blob x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setBlob", new Class<?>[] { int.class, Blob.class }, new Object[] { parameterIndex, x });
+        parameters.set(parameterIndex, RWParameters.BLOB, x);
     }
 
     @Override
     public void setClob(int parameterIndex, Clob x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setClob", new Class<?>[] { int.class, Clob.class }, new Object[] { parameterIndex, x });
+        parameters.set(parameterIndex, RWParameters.CLOB, x);
     }
 
     @Override
     public void setArray(int parameterIndex, Array x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setArray", new Class<?>[] { int.class, Array.class }, new Object[] { parameterIndex, x });
+        parameters.set(parameterIndex, RWParameters.ARRAY, x);
     }
 
     @Override
     public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setObject", new Class<?>[] { int.class, Object.class, int.class }, new Object[] {
-                parameterIndex, x, targetSqlType });
+        parameters.set(parameterIndex, RWParameters.OBJECT_TYPE, x, null, targetSqlType, 0);
     }
 
     @Override
     public void setObject(int parameterIndex, Object x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setObject", new Class<?>[] { int.class, Object.class }, new Object[] { parameterIndex, x });
-
+        parameters.set(parameterIndex, RWParameters.OBJECT, x);
     }
 
     @Override
     public void setRowId(int parameterIndex, RowId x) throws SQLException {
-        replaceStrBuffer(parameterIndex, x);
-        parameters.set("setRowId", new Class<?>[] { int.class, RowId.class }, new Object[] { parameterIndex, x });
+        parameters.set(parameterIndex, RWParameters.ROWID, x);
     }
 
     @Override
     public void setNString(int parameterIndex, String value) throws SQLException {
-        replaceStrBuffer(parameterIndex, value);
-        parameters
-                .set("setNString", new Class<?>[] { int.class, String.class }, new Object[] { parameterIndex, value });
+        parameters.set(parameterIndex, RWParameters.NSTRING, value);
     }
 
     @Override
     public void setNClob(int parameterIndex, NClob value) throws SQLException {
-        replaceStrBuffer(parameterIndex, value);
-        parameters.set("setNClob", new Class<?>[] { int.class, NClob.class }, new Object[] { parameterIndex, value });
+        parameters.set(parameterIndex, RWParameters.NCLOB, value);
     }
 
     @Override
     public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
-        parameters.set("setClob", new Class<?>[] { int.class, Reader.class, long.class }, new Object[] {
-                parameterIndex, reader, length });
+        parameters.set(parameterIndex, RWParameters.CLOB_READER_LENGTH, reader, null, 0, length);
     }
 
     @Override
     public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {
-        parameters.set("setBlob", new Class<?>[] { int.class, InputStream.class, long.class }, new Object[] {
-                parameterIndex, inputStream, length });
+        parameters.set(parameterIndex, RWParameters.BLOB_STREAM_LENGTH, inputStream, null, 0, length);
     }
 
     @Override
     public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
-        parameters.set("setNClob", new Class<?>[] { int.class, Reader.class, long.class }, new Object[] {
-                parameterIndex, reader, length });
+        parameters.set(parameterIndex, RWParameters.NCLOB_READER_LENGTH, reader, null, 0, length);
     }
 
     @Override
     public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {
-        replaceStrBuffer(parameterIndex, xmlObject);
-        parameters.set("setSQLXML", new Class<?>[] { int.class, SQLXML.class }, new Object[] { parameterIndex,
-                xmlObject });
+        parameters.set(parameterIndex, RWParameters.SQLXML, xmlObject);
     }
 
     @Override
     public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
-        parameters.set("setObject", new Class<?>[] { int.class, Object.class, int.class }, new Object[] {
-                parameterIndex, x, targetSqlType });
+        parameters.set(parameterIndex, RWParameters.OBJECT_TYPE_SCALE, x, null, targetSqlType, scaleOrLength);
     }
 
     @Override
     public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
-        parameters.set("setNCharacterStream", new Class<?>[] { int.class, Reader.class }, new Object[] {
-                parameterIndex, value });
+        parameters.set(parameterIndex, RWParameters.NCHARACTER_STREAM, value);
     }
 
     @Override
     public void setClob(int parameterIndex, Reader reader) throws SQLException {
-        parameters.set("setClob", new Class<?>[] { int.class, Reader.class }, new Object[] { parameterIndex, reader });
+        parameters.set(parameterIndex, RWParameters.CLOB_READER, reader);
     }
 
     @Override
     public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
-        parameters.set("setBlob", new Class<?>[] { int.class, InputStream.class }, new Object[] { parameterIndex,
-                inputStream });
+        parameters.set(parameterIndex, RWParameters.BLOB_STREAM, inputStream);
     }
 
     @Override
     public void setNClob(int parameterIndex, Reader reader) throws SQLException {
-        parameters.set("setNClob", new Class<?>[] { int.class, Reader.class }, new Object[] { parameterIndex, reader });
+        parameters.set(parameterIndex, RWParameters.NCLOB_READER, reader);
     }
 
     @Override
     public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException {
-        parameters.set("setNCharacterStream", new Class<?>[] { int.class, Reader.class }, new Object[] {
-                parameterIndex, value });
+        parameters.set(parameterIndex, RWParameters.NCHARACTER_STREAM_LONG, value, null, 0, length);
     }
 
     @Override
     public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
-        parameters.set("setAsciiStream", new Class<?>[] { int.class, InputStream.class, long.class }, new Object[] {
-                parameterIndex, x, length });
+        parameters.set(parameterIndex, RWParameters.ASCII_STREAM_LONG, x, null, 0, length);
     }
 
     @Override
     public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
-        parameters.set("setBinaryStream", new Class<?>[] { int.class, InputStream.class, long.class }, new Object[] {
-                parameterIndex, x, length });
+        parameters.set(parameterIndex, RWParameters.BINARY_STREAM_LONG, x, null, 0, length);
     }
 
     public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
-        parameters.set("setCharacterStream", new Class<?>[] { int.class, Reader.class }, new Object[] { parameterIndex,
-                reader });
+        parameters.set(parameterIndex, RWParameters.CHARACTER_STREAM_LONG, reader, null, 0, length);
     }
 
     public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
-        parameters.set("setAsciiStream", new Class<?>[] { int.class, InputStream.class }, new Object[] {
-                parameterIndex, x });
+        parameters.set(parameterIndex, RWParameters.ASCII_STREAM, x);
     }
 
     public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
-        parameters.set("setBinaryStream", new Class<?>[] { int.class, InputStream.class }, new Object[] {
-                parameterIndex, x });
+        parameters.set(parameterIndex, RWParameters.BINARY_STREAM, x);
     }
 
     public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
-        parameters.set("setCharacterStream", new Class<?>[] { int.class, Reader.class }, new Object[] { parameterIndex,
-                reader });
+        parameters.set(parameterIndex, RWParameters.CHARACTER_STREAM, reader);
     }
 
     @Override
     public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
-        parameters.set("setAsciiStream", new Class<?>[] { int.class, InputStream.class, int.class }, new Object[] {
-                parameterIndex, x, length });
+        parameters.set(parameterIndex, RWParameters.ASCII_STREAM_INT, x, null, 0, length);
     }
 
     @Override
     public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
-        parameters.set("setUnicodeStream", new Class<?>[] { int.class, InputStream.class, int.class }, new Object[] {
-                parameterIndex, x, length });
+        parameters.set(parameterIndex, RWParameters.UNICODE_STREAM, x, null, 0, length);
     }
 
     @Override
     public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
-        parameters.set("setBinaryStream", new Class<?>[] { int.class, InputStream.class, int.class }, new Object[] {
-                parameterIndex, x, length });
+        parameters.set(parameterIndex, RWParameters.BINARY_STREAM_INT, x, null, 0, length);
     }
 
     @Override
     public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
-        parameters.set("setCharacterStream", new Class<?>[] { int.class, Reader.class, int.class }, new Object[] {
-                parameterIndex, reader, length });
+        parameters.set(parameterIndex, RWParameters.CHARACTER_STREAM_INT, reader, null, 0, length);
     }
 
 }
@@ -5,19 +5,55 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.aldb.rwdb.BaseService;
+import com.aldb.rwdb.front.cache.ResultCache;
+import com.aldb.rwdb.front.cache.RowCache;
 import com.aldb.rwdb.front.keypool.BackendPool;
+import com.aldb.rwdb.front.keypool.GtidSet;
 import com.aldb.rwdb.front.keypool.PhysicalDatasource;
+import com.aldb.rwdb.front.monitor.ProxyMetrics;
+import com.aldb.rwdb.front.monitor.RouteAuditLog;
+import com.aldb.rwdb.front.route.PrimaryKeyCondition;
 import com.aldb.rwdb.front.route.RouteCondition;
 import com.aldb.rwdb.front.route.RouteResult;
+import com.aldb.rwdb.front.route.RouteSession;
 import com.aldb.rwdb.front.sql.error.SQLError;
 import com.aldb.rwdb.util.Constant;
+import com.aldb.rwdb.util.SQLNormalizer;
 
 public class RWStatement implements Statement {
+    private static final Logger log = LoggerFactory.getLogger(RWStatement.class);
 
     protected Statement realStat;
 
+    protected PhysicalDatasource physicalDs; // 当前语句所路由到的物理库
+
+    protected boolean writeRoute; // 当前语句是否路由到主库执行写操作
+
+    private long executeStart; // 语句开始执行的时间，纳秒
+    private SQLException executeError; // 本次执行失败的异常，成功时为null
+
+    private RouteResult currentRoute; // 当前语句的路由结果，事务中不路由的语句为null
+
+    private List<String> batchSqls; // addBatch(String)加入的语句
+
+    private boolean cacheWrite; // 执行之后是否需要失效查询结果缓存和行缓存
+
+    private String[] writeTables; // 写语句涉及的表，为null时缓存全部失效
+
+    private String rowWriteTable; // 按主键写的表，为null时行缓存按writeTables整表失效
+
+    private String[] rowWriteKeys; // rowWriteTable上写的主键
+
     protected RWConnection fakeConn;
 
     protected int createMethodByCon;
@@ -76,17 +112,44 @@ public class RWStatement implements Statement {
 
     @Override
     public void addBatch(String sql) throws SQLException {
-        throw SQLError.notImplemented();
+        if (batchSqls == null) {
+            batchSqls = new ArrayList<String>();
+        }
+        batchSqls.add(sql);
     }
 
     @Override
     public void clearBatch() throws SQLException {
-        throw SQLError.notImplemented();
+        if (batchSqls != null) {
+            batchSqls.clear();
+        }
     }
 
+    /**
+     * 批量语句都是写，整批只选择一次物理库，在主库的同一个Statement上一次性执行
+     */
     @Override
     public int[] executeBatch() throws SQLException {
-        throw SQLError.notImplemented();
+        if (batchSqls == null || batchSqls.isEmpty()) {
+            return new int[0];
+        }
+        try {
+            prepareBatch(batchSqls.get(0));
+            resolveBatchCacheWrite(batchSqls);
+            for (String sql : batchSqls) {
+                realStat.addBatch(sql);
+            }
+            beginExecute();
+            try {
+                return realStat.executeBatch();
+            } catch (SQLException e) {
+                throw executeFailed(e);
+            } finally {
+                endExecute();
+            }
+        } finally {
+            batchSqls.clear();
+        }
     }
 
     @Override
@@ -125,6 +188,7 @@ public class RWStatement implements Statement {
     public void close() throws SQLException {
         if (realStat != null) {
             realStat.close();
+            fakeConn.releaseRetiredConns();
             this.reset();
         }
     }
@@ -140,55 +204,123 @@ public class RWStatement implements Statement {
     @Override
     public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
         prepare(sql);
-        return realStat.execute(sql, autoGeneratedKeys);
+        beginExecute();
+        try {
+            return realStat.execute(sql, autoGeneratedKeys);
+        } catch (SQLException e) {
+            throw executeFailed(e);
+        } finally {
+            endExecute();
+        }
     }
 
     @Override
     public boolean execute(String sql, int[] columnIndexes) throws SQLException {
         prepare(sql);
-        return realStat.execute(sql, columnIndexes);
+        beginExecute();
+        try {
+            return realStat.execute(sql, columnIndexes);
+        } catch (SQLException e) {
+            throw executeFailed(e);
+        } finally {
+            endExecute();
+        }
     }
 
     @Override
     public boolean execute(String sql, String[] columnNames) throws SQLException {
         prepare(sql);
-        return realStat.execute(sql, columnNames);
+        beginExecute();
+        try {
+            return realStat.execute(sql, columnNames);
+        } catch (SQLException e) {
+            throw executeFailed(e);
+        } finally {
+            endExecute();
+        }
     }
 
     @Override
     public boolean execute(String sql) throws SQLException {
         prepare(sql);
-        return realStat.execute(sql);
+        beginExecute();
+        try {
+            return realStat.execute(sql);
+        } catch (SQLException e) {
+            throw executeFailed(e);
+        } finally {
+            endExecute();
+        }
     }
 
     @Override
     public ResultSet executeQuery(String sql) throws SQLException {
-        prepare(sql);
-        return realStat.executeQuery(sql);
+        RouteResult rrs = routeForCache(sql);
+        ResultSet cached = executeCachedQuery(sql, rrs);
+        if (cached != null) {
+            return cached;
+        }
+        prepareQuery(sql, rrs);
+        beginExecute();
+        try {
+            return realStat.executeQuery(sql);
+        } catch (SQLException e) {
+            throw executeFailed(e);
+        } finally {
+            endExecute();
+        }
     }
 
     @Override
     public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
         prepare(sql);
-        return realStat.executeUpdate(sql, autoGeneratedKeys);
+        beginExecute();
+        try {
+            return realStat.executeUpdate(sql, autoGeneratedKeys);
+        } catch (SQLException e) {
+            throw executeFailed(e);
+        } finally {
+            endExecute();
+        }
     }
 
     @Override
     public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
         prepare(sql);
-        return realStat.executeUpdate(sql, columnIndexes);
+        beginExecute();
+        try {
+            return realStat.executeUpdate(sql, columnIndexes);
+        } catch (SQLException e) {
+            throw executeFailed(e);
+        } finally {
+            endExecute();
+        }
     }
 
     @Override
     public int executeUpdate(String sql, String[] columnNames) throws SQLException {
         prepare(sql);
-        return realStat.executeUpdate(sql, columnNames);
+        beginExecute();
+        try {
+            return realStat.executeUpdate(sql, columnNames);
+        } catch (SQLException e) {
+            throw executeFailed(e);
+        } finally {
+            endExecute();
+        }
     }
 
     @Override
     public int executeUpdate(String sql) throws SQLException {
         prepare(sql);
-        return realStat.executeUpdate(sql);
+        beginExecute();
+        try {
+            return realStat.executeUpdate(sql);
+        } catch (SQLException e) {
+            throw executeFailed(e);
+        } finally {
+            endExecute();
+        }
     }
 
     @Override
@@ -411,6 +543,13 @@ public class RWStatement implements Statement {
 
     protected void reset() {
         this.realStat = null;
+        this.physicalDs = null;
+        this.writeRoute = false;
+        this.batchSqls = null;
+        this.cacheWrite = false;
+        this.writeTables = null;
+        this.rowWriteTable = null;
+        this.rowWriteKeys = null;
         this.fakeConn = null;
         this.autoGeneratedKeys = Statement.NO_GENERATED_KEYS;
         this.columnIndexes = null;
@@ -436,46 +575,397 @@ public class RWStatement implements Statement {
      * @throws SQLException
      */
     protected void prepare(String sql) throws SQLException {
-        // BaseService instance = BaseService.getInstance();
-        RouteCondition condition = new RouteCondition(sql, BaseService.getDbType());
-        RouteResult rrs = BaseService.getRouteService().route(condition);
+        if (fakeConn.isInTransaction()) {
+            prepareInTransaction(sql, false);
+            return;
+        }
+        prepare(sql, route(sql));
+    }
 
-        PhysicalDatasource physicalDs = BackendPool.getInstance().getDataSouce(rrs.getTartgetHost());
+    /**
+     * 按已经得到的路由结果初始化真正的Statement，不在事务中时调用
+     */
+    protected void prepare(String sql, RouteResult rrs) throws SQLException {
+        currentRoute = rrs;
+        resolveCacheWrite(sql, rrs, false);
+
+        // 写语句总是路由到主库；路由提示指定到主库的读不是写，不记录写入位置
+        writeRoute = rrs.isWrite();
+        physicalDs = selectDataSource(rrs.getTartgetHost());
 
         /**
-         * 在我们现这个项目中，因为写库与读库是不对等的，所以不能进行数据库的手动切换，所以在此只能抛异常
+         * 读库全部不可用时BackendPool已经转移到主库，这里拿不到说明主库也不存在，因为写库与读库是不对等的，所以只能抛异常
          */
         if (physicalDs == null) {
             // physicalDs =
             // BackendPool.getInstance().getAlivePhysicalDatasource();
             throw new SQLException(String.format("physical %s database can't get", rrs.getTartgetHost()));
         }
-        /*该组件应用在spring托管的事务项目中为了获取之前所使用 writeConnection所以需要进行局部存储，最后进行提交，
-         * 因为在一个事务中，初始使用该writeConnection到最后事务提交有可能进行connection的切换，所以在最后提交的时候也需要操作该writeConnection
-         * 比如在一个事务中:先写再读，或者写、读、更新三步
-        */
-        if (rrs.getTartgetHost().equals(Constant.RW.WRITE.name())) {
-            if(RWConnection.RWREAL_CONNECTION.get()!=null){
-                fakeConn.setRealConn(RWConnection.RWREAL_CONNECTION.get());
-            }else{
-                RWConnection.RWREAL_CONNECTION.set(physicalDs.getConnection());
-                fakeConn.setRealConn(RWConnection.RWREAL_CONNECTION.get());
+        // 主库、从库各自复用同一个物理连接，读转移到主库时也使用主库连接
+        boolean master = physicalDs == BackendPool.getInstance().getDataSouce(Constant.RW.WRITE.name());
+        fakeConn.acquireRealConn(physicalDs, master);
+        // 创建Statement
+        createStatements(sql);
+
+    }
+
+    /**
+     * 批量执行只做写操作，不逐条路由，直接使用主库连接；事务中与其它语句一样使用事务绑定的连接，只读事务中不允许
+     */
+    protected void prepareBatch(String sql) throws SQLException {
+        if (fakeConn.isInTransaction()) {
+            prepareInTransaction(sql, true);
+            return;
+        }
+        currentRoute = null;
+        writeRoute = true;
+        resolveCacheWrite(sql, isCacheEnabled() ? route(sql) : null, true);
+        physicalDs = BackendPool.getInstance().getDataSouce(Constant.RW.WRITE.name());
+        if (physicalDs == null) {
+            throw new SQLException(String.format("physical %s database can't get", Constant.RW.WRITE.name()));
+        }
+        fakeConn.acquireRealConn(physicalDs, true);
+        createStatements(sql);
+    }
+
+    /**
+     * 记录物理库上正在执行的语句数，供负载均衡使用
+     */
+    protected void beginExecute() {
+        if (physicalDs != null) {
+            physicalDs.beginRequest();
+        }
+        executeStart = System.nanoTime();
+    }
+
+    /**
+     * 记录执行失败的异常，在endExecute中计入物理库的熔断器
+     * 
+     * @return 传入的异常，供调用方抛出
+     */
+    protected SQLException executeFailed(SQLException e) {
+        executeError = e;
+        return e;
+    }
+
+    protected void endExecute() {
+        SQLException error = executeError;
+        executeError = null;
+        if (physicalDs != null) {
+            physicalDs.endRequest();
+            long latency = System.nanoTime() - executeStart;
+            physicalDs.recordResult(latency, error);
+            ProxyMetrics.getInstance().recordBackend(physicalDs.getName(), ProxyMetrics.Phase.EXECUTE, latency);
+            RouteAuditLog.getInstance().record(currentRoute, writeRoute, physicalDs, latency);
+        }
+        if (writeRoute) {
+            fakeConn.afterWrite(fakeConn.getRealConn());
+        }
+        if (cacheWrite) {
+            invalidateCaches();
+        }
+    }
+
+    private static boolean isCacheEnabled() {
+        return BaseService.getResultCache() != null || BaseService.getRowCache() != null;
+    }
+
+    /**
+     * 开启了缓存并且不在事务中时路由sql，结果供缓存探测和之后的执行共用，同一条查询只路由一次
+     *
+     * @return 不需要探测缓存时返回null
+     */
+    protected RouteResult routeForCache(String sql) throws SQLException {
+        if (!isCacheEnabled() || fakeConn.isInTransaction()) {
+            return null;
+        }
+        return route(sql);
+    }
+
+    /**
+     * 按探测缓存时得到的路由结果初始化，没有探测时正常路由
+     */
+    protected void prepareQuery(String sql, RouteResult rrs) throws SQLException {
+        if (rrs == null) {
+            prepare(sql);
+        } else {
+            prepare(sql, rrs);
+        }
+    }
+
+    /**
+     * 不在事务中时，先尝试查询结果缓存，再尝试按主键的行缓存
+     *
+     * @param rrs
+     *            routeForCache的结果
+     * @return sql不在缓存范围内时返回null，由调用方按同一个路由结果正常执行
+     */
+    protected ResultSet executeCachedQuery(String sql, RouteResult rrs) throws SQLException {
+        if (rrs == null) {
+            return null;
+        }
+        ResultCache resultCache = BaseService.getResultCache();
+        String key;
+        if (resultCache != null && resultCache.isCacheable(rrs) && (key = resultCacheKey(sql)) != null) {
+            ResultSet cached = resultCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            long[] versions = resultCache.snapshotVersions(rrs.getTables());
+            ResultSet rs = executeRoutedQuery(sql, rrs);
+            return resultCache.put(key, rrs.getTables(), versions, isReplicaRead(), rs);
+        }
+        RowCache rowCache = BaseService.getRowCache();
+        PrimaryKeyCondition condition = rrs.getPrimaryKeyCondition();
+        if (rowCache != null && condition != null && condition.isQuery()
+                && Constant.isReadTarget(rrs.getTartgetHost())) {
+            String[] keys = resolveKeyValues(sql, condition);
+            if (keys != null) {
+                ResultSet cached = rowCache.get(rrs.getTemplateId(), condition.getTable(), keys[0]);
+                if (cached != null) {
+                    return cached;
+                }
+                long snapshot = rowCache.snapshot(condition.getTable());
+                ResultSet rs = executeRoutedQuery(sql, rrs);
+                return rowCache.put(rrs.getTemplateId(), condition.getTable(), keys[0], snapshot, isReplicaRead(),
+                        rs);
             }
-           
-        }else{
-            fakeConn.setRealConn(physicalDs.getConnection());
         }
-       
+        return null;
+    }
 
-        if (fakeConn.getRealConn() == null) {
-            throw new SQLException(String.format("physical %s database can't connection", rrs.getTartgetHost()));
+    /**
+     * 刚执行的查询是否落在从库上，读转移到主库时不算
+     */
+    private boolean isReplicaRead() {
+        return physicalDs != BackendPool.getInstance().getDataSouce(Constant.RW.WRITE.name());
+    }
+
+    private ResultSet executeRoutedQuery(String sql, RouteResult rrs) throws SQLException {
+        prepare(sql, rrs);
+        beginExecute();
+        try {
+            return executeRealQuery(sql);
+        } catch (SQLException e) {
+            throw executeFailed(e);
+        } finally {
+            endExecute();
         }
-        // 创建Statement
+    }
+
+    protected ResultSet executeRealQuery(String sql) throws SQLException {
+        return realStat.executeQuery(sql);
+    }
+
+    /**
+     * 查询结果缓存的key，不能缓存时返回null
+     */
+    protected String resultCacheKey(String sql) {
+        return sql;
+    }
+
+    /**
+     * 主键条件中各主键的值，Statement从sql的常量中取值
+     *
+     * @return 有无法确定的值时返回null
+     */
+    protected String[] resolveKeyValues(String sql, PrimaryKeyCondition condition) {
+        int[] ordinals = condition.getOrdinals();
+        String[] keys = new String[ordinals.length];
+        if (ordinals.length == 0) {
+            return keys;
+        }
+        int[] positions = SQLNormalizer.placeholderPositions(sql);
+        for (int i = 0; i < ordinals.length; i++) {
+            if (ordinals[i] >= positions.length) {
+                return null;
+            }
+            int position = positions[ordinals[i]];
+            String literal = SQLNormalizer.literalAt(sql, position);
+            if (literal == null) {
+                return null;
+            }
+            keys[i] = RowCache.canonicalKey(literal, Character.isDigit(sql.charAt(position)));
+        }
+        return keys;
+    }
+
+    /**
+     * 开启缓存时，根据路由结果确定当前语句执行之后要失效的表和主键，路由到主库的语句都视为写，
+     * 路由提示指定目标的语句按语句本身判断
+     *
+     * @param batch
+     *            批量执行时每一行的主键不同，除普通insert外行缓存按整表失效
+     */
+    protected void resolveCacheWrite(String sql, RouteResult rrs, boolean batch) {
+        cacheWrite = rrs != null && isCacheEnabled() && rrs.isWrite();
+        writeTables = cacheWrite ? rrs.getTables() : null;
+        rowWriteTable = null;
+        rowWriteKeys = null;
+        PrimaryKeyCondition condition = cacheWrite ? rrs.getPrimaryKeyCondition() : null;
+        if (condition == null) {
+            return;
+        }
+        if (condition.isQuery()) {
+            // 路由到主库的按主键查询不修改数据
+            rowWriteTable = condition.getTable();
+            rowWriteKeys = new String[0];
+        } else if (!batch || condition.getOrdinals().length == 0) {
+            String[] keys = resolveKeyValues(sql, condition);
+            if (keys != null) {
+                rowWriteTable = condition.getTable();
+                rowWriteKeys = keys;
+            }
+        }
+    }
+
+    /**
+     * 多条语句的批量执行，失效全部语句涉及的表；全部是同一张表上按主键的写时，行缓存只失效这些主键
+     */
+    private void resolveBatchCacheWrite(List<String> sqls) throws SQLException {
+        if (!isCacheEnabled()) {
+            return;
+        }
+        Set<String> tables = new TreeSet<String>();
+        Set<String> keys = new TreeSet<String>();
+        String rowTable = null;
+        boolean exact = true;
+        for (String sql : sqls) {
+            RouteResult rrs = route(sql);
+            resolveCacheWrite(sql, rrs, false);
+            if (writeTables == null) {
+                tables = null;
+                exact = false;
+                break;
+            }
+            Collections.addAll(tables, writeTables);
+            if (exact && rowWriteTable != null && (rowTable == null || rowTable.equals(rowWriteTable))) {
+                rowTable = rowWriteTable;
+                Collections.addAll(keys, rowWriteKeys);
+            } else {
+                exact = false;
+            }
+        }
+        cacheWrite = true;
+        writeTables = tables == null ? null : tables.toArray(new String[tables.size()]);
+        rowWriteTable = exact ? rowTable : null;
+        rowWriteKeys = exact ? keys.toArray(new String[keys.size()]) : null;
+    }
+
+    /**
+     * 写语句执行之后立即失效，事务中的写在提交或回滚时再失效一次，避免事务期间其它会话从从库读到旧数据后写入缓存
+     */
+    private void invalidateCaches() {
+        ResultCache resultCache = BaseService.getResultCache();
+        if (resultCache != null) {
+            resultCache.invalidate(writeTables);
+        }
+        RowCache rowCache = BaseService.getRowCache();
+        if (rowCache != null) {
+            if (rowWriteTable == null) {
+                rowCache.invalidate(writeTables);
+            } else if (rowWriteKeys.length > 0) {
+                rowCache.evict(rowWriteTable, rowWriteKeys);
+            }
+        }
+        if (fakeConn.isInTransaction()) {
+            fakeConn.addTransactionWrite(writeTables, rowWriteTable, rowWriteKeys);
+        }
+    }
+
+    /**
+     * 根据路由结果选择物理库，开启GTID一致性时，本会话写过之后的读只选择已经执行了这些写入的从库，
+     * 没有满足的从库则读主库；STICKY一致性时，写之后的时间窗口内读主库。路由到从库组时只在组内选择
+     */
+    protected PhysicalDatasource selectDataSource(String target) {
+        BackendPool pool = BackendPool.getInstance();
+        if (Constant.isReadTarget(target)) {
+            PhysicalDatasource held = fakeConn.getReadDataSource();
+            switch (BaseService.getReadConsistency()) {
+            case GTID:
+                GtidSet required = RouteSession.current().getWriteGtidSet();
+                if (required != null && !required.isEmpty()) {
+                    if (held != null && pool.isReadable(held, target) && pool.hasExecuted(held, required)) {
+                        return held;
+                    }
+                    PhysicalDatasource ds = pool.selectReadDataSource(target, required);
+                    return ds != null ? ds : pool.getDataSouce(Constant.RW.WRITE.name());
+                }
+                break;
+            case STICKY:
+                if (RouteSession.current().isWithinWriteWindow(BaseService.getStickyMasterWindow())) {
+                    return pool.getDataSouce(Constant.RW.WRITE.name());
+                }
+                break;
+            default:
+                break;
+            }
+            // 已经持有连接的从库仍然可用时继续使用，避免每条语句重新获取连接
+            if (held != null && pool.isReadable(held, target)) {
+                return held;
+            }
+        }
+        return pool.selectDataSource(target);
+    }
+
+    /**
+     * 获取sql的路由结果
+     * 
+     * @param sql
+     * @return
+     * @throws SQLException
+     */
+    protected RouteResult route(String sql) throws SQLException {
+        // BaseService instance = BaseService.getInstance();
+        RouteCondition condition = new RouteCondition(sql, BaseService.getDbType());
+        return BaseService.getRouteService().route(condition, RouteSession.current().getScopeTarget());
+    }
+
+    /**
+     * 事务中的语句不做路由:读写事务的全部语句都在同一个主库连接上执行，只读事务的全部语句都在同一个从库连接上执行，
+     * 只读事务中的写语句直接抛出异常。连接在事务的第一条语句时获取并初始化，直到提交或回滚
+     */
+    private void prepareInTransaction(String sql, boolean batch) throws SQLException {
+        boolean readOnly = fakeConn.isReadOnlyTransaction();
+        // 只读事务的连接在从库上，写语句(包括加锁读、批量和无法确定读写的语句)不能在上面执行，也不能单独发往主库
+        if (readOnly && (batch || route(sql).isWrite())) {
+            throw new SQLException("write statement is not allowed in a read-only transaction", "25006");
+        }
+        if (fakeConn.getTransactionConn() == null) {
+            String target = readOnly ? Constant.RW.READ.name() : Constant.RW.WRITE.name();
+            PhysicalDatasource ds = selectDataSource(target);
+            if (ds == null) {
+                throw new SQLException(String.format("physical %s database can't get", target));
+            }
+            fakeConn.bindTransaction(ds, ds == BackendPool.getInstance().getDataSouce(Constant.RW.WRITE.name()));
+        } else {
+            fakeConn.useTransactionConn();
+        }
+        physicalDs = fakeConn.getTransactionDataSource();
+        currentRoute = null;
+        writeRoute = !readOnly;
+        resolveCacheWrite(sql, writeRoute && isCacheEnabled() ? route(sql) : null, false);
         createStatements(sql);
+    }
 
+    /**
+     * 物理连接在语句之间复用，重新执行前关闭上一次创建的Statement，否则会一直留在物理连接上
+     */
+    protected void closeRealStatement() {
+        if (realStat == null) {
+            return;
+        }
+        try {
+            realStat.close();
+        } catch (SQLException e) {
+            log.warn("close real statement error", e);
+        }
+        realStat = null;
+        fakeConn.releaseRetiredConns();
     }
 
     protected void createStatements(String sql) throws SQLException {
+        closeRealStatement();
         switch (this.createMethodByCon) {
         case CREATE_ST_METHOD_BY_CON:
             realStat = fakeConn.getRealConn().createStatement();
@@ -491,6 +981,7 @@ public class RWStatement implements Statement {
         if (realStat == null) {
             throw new SQLException("No real Statement exist");
         }
+        fakeConn.trackStatement(realStat);
         if (this.maxFieldSize != 0) {
             realStat.setMaxFieldSize(maxFieldSize);
         }
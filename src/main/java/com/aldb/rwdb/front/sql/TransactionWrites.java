@@ -0,0 +1,92 @@
+package com.aldb.rwdb.front.sql;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.aldb.rwdb.front.cache.ResultCache;
+import com.aldb.rwdb.front.cache.RowCache;
+
+/**
+ * 事务中写语句涉及的表和主键。写语句执行后已经失效过一次缓存，但事务提交之前其它会话仍可能从从库读到旧数据并写入缓存，
+ * 所以提交或回滚后按这里记录的内容再失效一次
+ *
+ */
+class TransactionWrites {
+
+    private final Set<String> tables = new HashSet<String>(); // 查询结果缓存按表失效
+    private boolean allTables; // 有无法确定表的写
+
+    private final Set<String> rowTables = new HashSet<String>(); // 行缓存整表失效
+    private boolean allRowTables;
+    private final Map<String, Set<String>> rowKeys = new HashMap<String, Set<String>>(); // 行缓存按主键失效
+
+    private boolean empty = true;
+
+    /**
+     * @param tables
+     *            写语句涉及的表，为null时表示无法确定
+     * @param rowTable
+     *            按主键写的表，为null时行缓存按tables整表失效
+     * @param keys
+     *            rowTable上写的主键
+     */
+    void add(String[] tables, String rowTable, String[] keys) {
+        empty = false;
+        if (tables == null) {
+            allTables = true;
+        } else {
+            Collections.addAll(this.tables, tables);
+        }
+        if (rowTable != null) {
+            if (keys.length > 0) {
+                Set<String> set = rowKeys.get(rowTable);
+                if (set == null) {
+                    set = new HashSet<String>();
+                    rowKeys.put(rowTable, set);
+                }
+                Collections.addAll(set, keys);
+            }
+        } else if (tables == null) {
+            allRowTables = true;
+        } else {
+            Collections.addAll(rowTables, tables);
+        }
+    }
+
+    void invalidate(ResultCache resultCache, RowCache rowCache) {
+        if (empty) {
+            return;
+        }
+        if (resultCache != null) {
+            if (allTables) {
+                resultCache.invalidate((String[]) null);
+            } else {
+                resultCache.invalidate(tables);
+            }
+        }
+        if (rowCache != null) {
+            if (allRowTables) {
+                rowCache.invalidate(null);
+            } else if (!rowTables.isEmpty()) {
+                rowCache.invalidate(rowTables.toArray(new String[rowTables.size()]));
+            }
+            for (Map.Entry<String, Set<String>> entry : rowKeys.entrySet()) {
+                rowCache.evict(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
+            }
+        }
+        clear();
+    }
+
+    void clear() {
+        tables.clear();
+        allTables = false;
+        rowTables.clear();
+        allRowTables = false;
+        rowKeys.clear();
+        empty = true;
+    }
+
+}
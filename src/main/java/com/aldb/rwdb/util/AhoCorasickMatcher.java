@@ -0,0 +1,115 @@
+package com.aldb.rwdb.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick多模式匹配，构建之后只读，可以被多个线程同时使用。
+ * 一遍扫描判断文本中是否包含任意一个模式串，耗时与模式串的个数无关
+ * 
+ */
+public class AhoCorasickMatcher {
+
+    private final Node root = new Node();
+
+    public AhoCorasickMatcher(List<String> patterns) {
+        for (String pattern : patterns) {
+            if (pattern != null && pattern.length() > 0) {
+                add(pattern);
+            }
+        }
+        buildFailLinks();
+    }
+
+    private void add(String pattern) {
+        Node node = root;
+        for (int i = 0; i < pattern.length(); i++) {
+            node = node.addChild(pattern.charAt(i));
+        }
+        node.output = true;
+    }
+
+    private void buildFailLinks() {
+        Queue<Node> queue = new LinkedList<Node>();
+        for (Node child : root.children) {
+            child.fail = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            for (int i = 0; i < node.size; i++) {
+                Node child = node.children[i];
+                char c = node.keys[i];
+                Node fail = node.fail;
+                while (fail != root && fail.child(c) == null) {
+                    fail = fail.fail;
+                }
+                Node target = fail.child(c);
+                child.fail = (target == null || target == child) ? root : target;
+                // 后缀是某个模式串时，当前节点也算命中
+                child.output |= child.fail.output;
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * text中是否包含任意一个模式串
+     */
+    public boolean matches(String text) {
+        Node node = root;
+        for (int i = 0, len = text.length(); i < len; i++) {
+            char c = text.charAt(i);
+            Node next = node.child(c);
+            while (next == null && node != root) {
+                node = node.fail;
+                next = node.child(c);
+            }
+            node = next == null ? root : next;
+            if (node.output) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return root.size == 0;
+    }
+
+    private static class Node {
+        // 按字符排好序的子节点，查找时二分
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private int size;
+        private Node fail;
+        private boolean output;
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(keys, 0, size, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node addChild(char c) {
+            int index = Arrays.binarySearch(keys, 0, size, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insert = -index - 1;
+            List<Node> list = new ArrayList<Node>(Arrays.asList(children));
+            Node child = new Node();
+            list.add(insert, child);
+            char[] newKeys = new char[size + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            newKeys[insert] = c;
+            System.arraycopy(keys, insert, newKeys, insert + 1, size - insert);
+            keys = newKeys;
+            children = list.toArray(new Node[list.size()]);
+            size++;
+            return child;
+        }
+    }
+}
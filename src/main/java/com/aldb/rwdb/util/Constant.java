@@ -10,7 +10,36 @@ public class Constant {
         WRITE, READ
     }
 
-   /* public static String getDataSourceKey(String prefix, int index) {
+    /**
+     * 写之后读的一致性:NONE不保证;GTID读已经执行了本会话写入GTID的从库;STICKY写之后的一段时间内读主库
+     */
+    public enum ReadConsistency {
+        NONE, GTID, STICKY
+    }
+
+    public static String getDataSourceKey(String prefix, int index) {
         return prefix + "-" + index;
-    }*/
+    }
+
+    // 路由到指定从库组的目标为READ:组名
+    private static final String GROUP_TARGET_PREFIX = RW.READ.name() + ":";
+
+    public static String getGroupTarget(String group) {
+        return GROUP_TARGET_PREFIX + group;
+    }
+
+    /**
+     * @return 不是从库组的路由目标时返回null
+     */
+    public static String getTargetGroup(String target) {
+        return target != null && target.startsWith(GROUP_TARGET_PREFIX) ? target.substring(GROUP_TARGET_PREFIX
+                .length()) : null;
+    }
+
+    /**
+     * 路由目标是否为读:READ或READ:组名
+     */
+    public static boolean isReadTarget(String target) {
+        return RW.READ.name().equals(target) || getTargetGroup(target) != null;
+    }
 }
@@ -0,0 +1,227 @@
+package com.aldb.rwdb.util;
+
+/**
+ * 单行的insert ... values (?, ?, ...)模板，可以把同一模板的多行合并成一条insert ... values (...),(...)。
+ * 只接受values后只有一组括号，并且全部?都在这组括号中的语句，括号后可以有不带?的部分，比如on duplicate key update。
+ * insert ignore和on duplicate key update的多行语句返回的自增主键与行对应不上，需要自增主键时只能合并普通的insert
+ *
+ */
+public final class MultiRowInsertTemplate {
+
+    private final String prefix; // 到values之后的第一个括号之前
+    private final String row; // values后的那组括号
+    private final String suffix;
+    private final int parameterCount;
+    private final boolean plain;
+
+    private MultiRowInsertTemplate(String prefix, String row, String suffix, int parameterCount, boolean plain) {
+        this.prefix = prefix;
+        this.row = row;
+        this.suffix = suffix;
+        this.parameterCount = parameterCount;
+        this.plain = plain;
+    }
+
+    /**
+     * @return 不是可以合并的单行insert时返回null
+     */
+    public static MultiRowInsertTemplate parse(String sql) {
+        int len = sql.length();
+        int i = skipBlankAndComments(sql, 0);
+        if (!matchKeyword(sql, i, "insert")) {
+            return null;
+        }
+        // 找到顶层的values关键字
+        int valuesEnd = -1;
+        int depth = 0;
+        boolean ignore = false;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(sql, i, c);
+            } else if (isCommentStart(sql, i)) {
+                i = skipComment(sql, i);
+            } else if (c == '?') {
+                return null; // values之前出现参数
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth--;
+                i++;
+            } else if (depth == 0 && (matchKeyword(sql, i, "values") || matchKeyword(sql, i, "value"))) {
+                valuesEnd = i + (matchKeyword(sql, i, "values") ? 6 : 5);
+                break;
+            } else if (depth == 0 && matchKeyword(sql, i, "select")) {
+                return null;
+            } else if (depth == 0 && matchKeyword(sql, i, "ignore")) {
+                ignore = true;
+                i += 6;
+            } else {
+                i++;
+            }
+        }
+        if (valuesEnd < 0) {
+            return null;
+        }
+        int rowStart = skipBlankAndComments(sql, valuesEnd);
+        if (rowStart >= len || sql.charAt(rowStart) != '(') {
+            return null;
+        }
+        int parameterCount = 0;
+        depth = 0;
+        i = rowStart;
+        int rowEnd = -1;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(sql, i, c);
+            } else if (isCommentStart(sql, i)) {
+                i = skipComment(sql, i);
+            } else {
+                if (c == '?') {
+                    parameterCount++;
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    rowEnd = i + 1;
+                    break;
+                }
+                i++;
+            }
+        }
+        if (rowEnd < 0 || parameterCount == 0) {
+            return null;
+        }
+        // 括号之后不能再有一行数据、参数或者第二条语句
+        int next = skipBlankAndComments(sql, rowEnd);
+        if (next < len && sql.charAt(next) == ',') {
+            return null;
+        }
+        i = rowEnd;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(sql, i, c);
+            } else if (isCommentStart(sql, i)) {
+                i = skipComment(sql, i);
+            } else if (c == '?' || c == ';') {
+                return null;
+            } else {
+                i++;
+            }
+        }
+        boolean plain = !ignore && next == len;
+        return new MultiRowInsertTemplate(sql.substring(0, rowStart), sql.substring(rowStart, rowEnd),
+                sql.substring(rowEnd), parameterCount, plain);
+    }
+
+    /**
+     * 是否是没有ignore、括号后也没有on duplicate key update之类后缀的普通insert，
+     * 只有这种语句合并后返回的自增主键能与每一行一一对应
+     */
+    public boolean isPlain() {
+        return plain;
+    }
+
+    /**
+     * 每一行的参数个数
+     */
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * 每增加一行sql增加的长度
+     */
+    public int getRowLength() {
+        return row.length() + 1;
+    }
+
+    /**
+     * 不含行的部分的长度
+     */
+    public int getBaseLength() {
+        return prefix.length() + suffix.length();
+    }
+
+    public String build(int rows) {
+        StringBuilder sb = new StringBuilder(prefix.length() + suffix.length() + rows * (row.length() + 1));
+        sb.append(prefix).append(row);
+        for (int i = 1; i < rows; i++) {
+            sb.append(',').append(row);
+        }
+        return sb.append(suffix).toString();
+    }
+
+    private static boolean matchKeyword(String sql, int i, String keyword) {
+        int end = i + keyword.length();
+        if (end > sql.length() || !sql.regionMatches(true, i, keyword, 0, keyword.length())) {
+            return false;
+        }
+        if (i > 0 && isIdentifierChar(sql.charAt(i - 1))) {
+            return false;
+        }
+        return end == sql.length() || !isIdentifierChar(sql.charAt(end));
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static boolean isCommentStart(String sql, int i) {
+        char c = sql.charAt(i);
+        if (c == '#') {
+            return true;
+        }
+        if (i + 1 >= sql.length()) {
+            return false;
+        }
+        char n = sql.charAt(i + 1);
+        return (c == '/' && n == '*') || (c == '-' && n == '-');
+    }
+
+    private static int skipComment(String sql, int i) {
+        if (sql.charAt(i) == '/') {
+            int end = sql.indexOf("*/", i + 2);
+            return end < 0 ? sql.length() : end + 2;
+        }
+        int end = sql.indexOf('\n', i);
+        return end < 0 ? sql.length() : end + 1;
+    }
+
+    private static int skipBlankAndComments(String sql, int i) {
+        int len = sql.length();
+        while (i < len) {
+            if (Character.isWhitespace(sql.charAt(i))) {
+                i++;
+            } else if (isCommentStart(sql, i)) {
+                i = skipComment(sql, i);
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static int skipQuoted(String sql, int start, char quote) {
+        int len = sql.length();
+        int i = start + 1;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == '\\' && quote != '`') {
+                i += 2;
+            } else if (c == quote) {
+                if (i + 1 < len && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return len;
+    }
+
+}
@@ -0,0 +1,177 @@
+package com.aldb.rwdb.util;
+
+import java.util.Arrays;
+
+/**
+ * 将sql规整为参数化的模板，用作路由缓存的key: 字符串和数字常量替换为?，连续空白压缩为一个空格，
+ * 注释原样保留。这样只是常量不同的sql会得到同一个key
+ * 
+ */
+public class SQLNormalizer {
+
+    private SQLNormalizer() {
+    }
+
+    public static String normalize(String sql) {
+        int len = sql.length();
+        StringBuilder sb = new StringBuilder(len);
+        boolean space = false;
+        int i = 0;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+                i++;
+                continue;
+            }
+            if (space) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                space = false;
+            }
+            if (c == '\'' || c == '"') {
+                i = skipQuoted(sql, i, c);
+                sb.append('?');
+            } else if (c == '`') {
+                int end = skipQuoted(sql, i, c);
+                sb.append(sql, i, end);
+                i = end;
+            } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                end = end < 0 ? len : end + 2;
+                sb.append(sql, i, end);
+                i = end;
+            } else if (isDigit(c) && !isIdentifierTail(sb)) {
+                i++;
+                while (i < len && (isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                sb.append('?');
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * sql中与模板里每个?对应的位置，依次为字符串常量的起始引号、数字常量的第一个数字或原sql中的?，
+     * 第i个位置就是解析模板时编号为i的?
+     */
+    public static int[] placeholderPositions(String sql) {
+        int len = sql.length();
+        int[] positions = new int[8];
+        int count = 0;
+        char last = 0; // 规整后输出的最后一个字符，用于判断数字是否为标识符的一部分
+        int i = 0;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                last = ' ';
+                i++;
+                continue;
+            }
+            int start = i;
+            boolean placeholder = true;
+            if (c == '\'' || c == '"') {
+                i = skipQuoted(sql, i, c);
+            } else if (c == '`') {
+                i = skipQuoted(sql, i, c);
+                placeholder = false;
+            } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? len : end + 2;
+                placeholder = false;
+            } else if (isDigit(c) && !isIdentifierChar(last)) {
+                i++;
+                while (i < len && (isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+            } else {
+                placeholder = c == '?';
+                i++;
+            }
+            last = placeholder ? '?' : sql.charAt(i - 1);
+            if (placeholder) {
+                if (count == positions.length) {
+                    positions = Arrays.copyOf(positions, count << 1);
+                }
+                positions[count++] = start;
+            }
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    /**
+     * placeholderPositions返回的位置上的常量值，字符串去掉引号和转义，原sql中的?返回null
+     */
+    public static String literalAt(String sql, int position) {
+        char c = sql.charAt(position);
+        if (c == '?') {
+            return null;
+        }
+        if (c == '\'' || c == '"') {
+            int end = skipQuoted(sql, position, c);
+            StringBuilder sb = new StringBuilder(end - position);
+            for (int i = position + 1; i < end - 1; i++) {
+                char ch = sql.charAt(i);
+                if (ch == '\\' || (ch == c && i + 1 < end - 1 && sql.charAt(i + 1) == c)) {
+                    ch = sql.charAt(++i);
+                }
+                sb.append(ch);
+            }
+            return sb.toString();
+        }
+        int end = position + 1;
+        while (end < sql.length() && (isDigit(sql.charAt(end)) || sql.charAt(end) == '.')) {
+            end++;
+        }
+        return sql.substring(position, end);
+    }
+
+    /**
+     * 模板的64位FNV-1a指纹，用于在日志中代替模板全文
+     */
+    public static long fingerprint(String template) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < template.length(); i++) {
+            hash ^= template.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static int skipQuoted(String sql, int start, char quote) {
+        int len = sql.length();
+        int i = start + 1;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == '\\' && quote != '`') {
+                i += 2;
+            } else if (c == quote) {
+                if (i + 1 < len && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return len;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierTail(StringBuilder sb) {
+        return sb.length() > 0 && isIdentifierChar(sb.charAt(sb.length() - 1));
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.' || c == '`';
+    }
+}
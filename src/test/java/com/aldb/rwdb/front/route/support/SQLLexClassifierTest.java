@@ -0,0 +1,135 @@
+package com.aldb.rwdb.front.route.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import com.aldb.rwdb.front.route.support.SQLLexClassifier.SQLType;
+import com.alibaba.druid.sql.ast.SQLStatement;
+import com.alibaba.druid.sql.ast.statement.SQLSelectStatement;
+import com.alibaba.druid.sql.parser.SQLParserUtils;
+
+/**
+ * 词法扫描的结论必须与druid解析后的路由结论一致，只有SHOW/DESC/EXPLAIN是有意的例外，
+ * 无法确定的语句必须返回UNKNOWN交给druid
+ *
+ */
+public class SQLLexClassifierTest {
+
+    private static final String[] READS = {
+            "select * from t where id = 1",
+            "SELECT id FROM t",
+            " \n\tselect 1",
+            "(select id from t) union (select id from u)",
+            "select * from t where id in (select id from u)",
+            "/* comment */ select * from t",
+            "-- comment\nselect * from t",
+            "# comment\nselect * from t",
+            "/*+ rwdb:replica */ select * from t",
+            "/*+ rwdb:master */ select * from t",
+            "select /*+ MAX_EXECUTION_TIME(1000) */ * from t",
+            "select 'for update' from t",
+            "select * from t where v = 'lock in share mode'",
+            "select * from t where v = 'it''s' and w = \"for update\"",
+            "select * from t where v = 'a\\' for update'",
+            "select `update`, `for` from t",
+            "select * from t -- for update\n",
+            "select * from t /* for update */",
+            "select * from t where v = 'a;b'",
+            "select * from t;",
+            "select forupdate from t" };
+
+    private static final String[] WRITES = {
+            "insert into t values (1, 'a')",
+            "INSERT INTO t SELECT * FROM u",
+            "update t set v = 'select' where id = 1",
+            "delete from t where id = 1",
+            "replace into t values (1, 'a')",
+            "/* select */ update t set v = 1",
+            "-- select\ndelete from t",
+            "/*+ rwdb:replica */ update t set v = 1",
+            "create table x (id int)",
+            "truncate table t",
+            "drop table t",
+            "set names utf8" };
+
+    private static final String[] LOCKING_READS = {
+            "select * from t where id = 1 for update",
+            "SELECT * FROM t WHERE id = 1 FOR UPDATE",
+            "select * from t where id = 1\nfor\tupdate",
+            "select * from t where id = 1 for /* comment */ update",
+            "select * from t where id = 1 lock in share mode",
+            "select * from t where v = 'x' LOCK IN SHARE MODE" };
+
+    // 可执行注释、多语句、WITH等，必须交给druid
+    private static final String[] UNKNOWNS = {
+            "/*!40001 select * from t */",
+            "select /*!40001 SQL_NO_CACHE */ * from t",
+            "select 1; delete from t",
+            "with x as (select 1) select * from x",
+            "values (1)",
+            "table t",
+            "",
+            "   ",
+            "/* only comment */" };
+
+    // druid不解析为select，原来路由到主库；词法扫描把它们作为读，路由到从库
+    private static final String[] READ_ONLY_NON_SELECTS = {
+            "show tables",
+            "SHOW CREATE TABLE t",
+            "/* comment */ show variables like 'x'",
+            "desc t",
+            "describe t",
+            "explain select * from t" };
+
+    @Test
+    public void readsAgreeWithDruid() {
+        assertAgreesWithDruid(READS, SQLType.READ);
+    }
+
+    @Test
+    public void writesAgreeWithDruid() {
+        assertAgreesWithDruid(WRITES, SQLType.WRITE);
+    }
+
+    @Test
+    public void lockingReadsAgreeWithDruid() {
+        assertAgreesWithDruid(LOCKING_READS, SQLType.LOCKING_READ);
+    }
+
+    @Test
+    public void ambiguousStatementsAreLeftToDruid() {
+        for (String sql : UNKNOWNS) {
+            assertEquals(sql, SQLType.UNKNOWN, SQLLexClassifier.classify(sql));
+        }
+        assertEquals(SQLType.UNKNOWN, SQLLexClassifier.classify(null));
+    }
+
+    @Test
+    public void showDescExplainAreReads() {
+        for (String sql : READ_ONLY_NON_SELECTS) {
+            assertEquals(sql, SQLType.READ, SQLLexClassifier.classify(sql));
+            assertFalse(sql, druidType(sql) == SQLType.READ);
+        }
+    }
+
+    private static void assertAgreesWithDruid(String[] corpus, SQLType expected) {
+        for (String sql : corpus) {
+            assertEquals(sql, expected, druidType(sql));
+            assertEquals(sql, expected, SQLLexClassifier.classify(sql));
+        }
+    }
+
+    /**
+     * 与DruidRouteStrategy相同的判断:不加锁的select为读，加锁的select为加锁读，其它为写
+     */
+    private static SQLType druidType(String sql) {
+        SQLStatement statement = SQLParserUtils.createSQLStatementParser(sql, "mysql").parseStatement();
+        if (!(statement instanceof SQLSelectStatement)) {
+            return SQLType.WRITE;
+        }
+        return DruidRouteStrategy.isLockingRead((SQLSelectStatement) statement) ? SQLType.LOCKING_READ
+                : SQLType.READ;
+    }
+}